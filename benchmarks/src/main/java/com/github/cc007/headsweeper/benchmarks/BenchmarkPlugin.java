@@ -0,0 +1,195 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import com.github.cc007.headsplugin.api.business.domain.Head;
+import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import org.bukkit.World;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * The plugin, set up the way {@link HeadSweeper#onEnable()} does, but without
+ * metrics, commands, listeners and the HeadsPlugin services. The heads are
+ * placed by a stand-in that only counts them. Every instance gets its own
+ * data folder, which is deleted when the plugin is disabled.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BenchmarkPlugin extends HeadSweeper {
+
+    private static final String CONFIG = String.join("\n",
+            "persistence:",
+            "  save-window-ticks: 20",
+            "  shutdown-timeout-millis: 10000",
+            "  compact-after-operations: 1000",
+            "worker-threads: 0",
+            "rendering:",
+            "  max-blocks-per-tick: 2000",
+            "  max-millis-per-tick: 10",
+            "debug: false",
+            "throttle:",
+            "  sweep:",
+            "    rate: 0",
+            "  flag:",
+            "    rate: 0",
+            "auto-reset:",
+            "  delay-seconds: 0",
+            "");
+
+    private final BenchmarkServer benchmarkServer;
+    private final File dataFolder;
+    private final LongAdder placedHeads;
+
+    private BenchmarkPlugin(BenchmarkServer benchmarkServer, File dataFolder) {
+        super(new JavaPluginLoader(benchmarkServer.getServer()),
+                new PluginDescriptionFile("HeadSweeper", "benchmark", HeadSweeper.class.getName()),
+                dataFolder,
+                new File(dataFolder, "HeadSweeper.jar"));
+        this.benchmarkServer = benchmarkServer;
+        this.dataFolder = dataFolder;
+        this.placedHeads = new LongAdder();
+    }
+
+    /**
+     * Create and enable the plugin in a new data folder
+     *
+     * @return the enabled plugin
+     */
+    public static BenchmarkPlugin enable() {
+        BenchmarkServer benchmarkServer = BenchmarkServer.get();
+        File dataFolder;
+        try {
+            dataFolder = Files.createTempDirectory("headsweeper-benchmark").toFile();
+            Files.write(new File(dataFolder, "config.yml").toPath(), CONFIG.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        BenchmarkPlugin plugin = new BenchmarkPlugin(benchmarkServer, dataFolder);
+        plugin.setupComponents();
+        plugin.setHeads(nullHeads(), StandIns.headPlacer(plugin.placedHeads));
+        plugin.getRenderScheduler().start();
+        plugin.awaitTicks(plugin.loadGames());
+        return plugin;
+    }
+
+    /**
+     * Map every head name to null. The stand-in head placer doesn't look at
+     * the heads that it places.
+     */
+    private static Map<String, Head> nullHeads() {
+        Map<String, Head> heads = new HashMap<>();
+        for (String name : Arrays.asList("unknown", "flag", "bomb", "0", "1", "2", "3", "4", "5", "6", "7", "8")) {
+            heads.put(name, null);
+        }
+        return heads;
+    }
+
+    /**
+     * Disable the plugin, wait for its pending writes and delete its data
+     * folder
+     */
+    public void disable() {
+        onDisable();
+        benchmarkServer.cancelTasks();
+        try (Stream<Path> paths = Files.walk(dataFolder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public BenchmarkServer getBenchmarkServer() {
+        return benchmarkServer;
+    }
+
+    /**
+     * Get the number of heads that have been placed since the plugin was
+     * enabled
+     *
+     * @return the number of placed heads
+     */
+    public long getPlacedHeads() {
+        return placedHeads.sum();
+    }
+
+    /**
+     * Run server ticks until a future has completed. The future can depend on
+     * tasks that run on the main thread.
+     *
+     * @param <T> the type of the result
+     * @param future the future
+     * @return the result of the future
+     */
+    public <T> T awaitTicks(CompletableFuture<T> future) {
+        while (!future.isDone()) {
+            if (benchmarkServer.tick() == 0) {
+                Thread.yield();
+            }
+        }
+        return future.join();
+    }
+
+    /**
+     * Create boards in a square grid with two blocks between the boards and
+     * add them to the controller. About one in six tiles is a bomb.
+     *
+     * @param world the world of the boards
+     * @param boardCount the number of boards
+     * @param boardSize the width and height of every board
+     * @param engine the engine of the boards
+     * @return the boards
+     */
+    public List<HeadSweeperGame> createBoards(World world, int boardCount, int boardSize, SweeperEngine engine) {
+        int columns = (int) Math.ceil(Math.sqrt(boardCount));
+        List<HeadSweeperGame> games = new ArrayList<>(boardCount);
+        for (int i = 0; i < boardCount; i++) {
+            int x = (i % columns) * (boardSize + 2);
+            int z = (i / columns) * (boardSize + 2);
+            HeadSweeperGame game = new HeadSweeperGame(x, 64, z, engine.create(boardSize, boardSize, boardSize * boardSize / 6), world, this);
+            game.getGame().resetField();
+            games.add(game);
+        }
+        getController().addGames(games);
+        return games;
+    }
+}
@@ -0,0 +1,63 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options. Unless another
+ * result format or file is given, the results are written as json to
+ * jmh-result.json, so that the results of different releases can be
+ * compared.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList()) {
+            Main.main(args);
+            return;
+        }
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!options.getResult().hasValue()) {
+            builder.result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,250 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A server stand-in whose scheduler only runs tasks when the benchmark calls
+ * {@link #tick()}. The thread that calls {@link #tick()} plays the part of
+ * the main thread. Bukkit only accepts one server per JVM, so every benchmark
+ * in a fork shares the same instance.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class BenchmarkServer {
+
+    private static BenchmarkServer instance;
+
+    private final Server server;
+    private final Map<UUID, World> worlds;
+    private final List<Task> tasks;
+    private final AtomicInteger nextTaskId;
+    private final LongAdder calledEvents;
+    private long currentTick;
+
+    private BenchmarkServer() {
+        this.worlds = new ConcurrentHashMap<>();
+        this.tasks = new ArrayList<>();
+        this.nextTaskId = new AtomicInteger(1);
+        this.calledEvents = new LongAdder();
+        Logger logger = Logger.getLogger("BenchmarkServer");
+        BukkitScheduler scheduler = StandIns.create(BukkitScheduler.class, this::schedule);
+        PluginManager pluginManager = StandIns.create(PluginManager.class, (method, args) -> {
+            if (method.equals("callEvent")) {
+                calledEvents.increment();
+            }
+            return StandIns.UNHANDLED;
+        });
+        this.server = StandIns.create(Server.class, (method, args) -> {
+            switch (method) {
+                case "getName":
+                    return "BenchmarkServer";
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "1.15-R0.1-SNAPSHOT";
+                case "getLogger":
+                    return logger;
+                case "getScheduler":
+                    return scheduler;
+                case "getPluginManager":
+                    return pluginManager;
+                case "isPrimaryThread":
+                    return true;
+                case "getWorlds":
+                    return new ArrayList<>(worlds.values());
+                case "getWorld":
+                    if (args[0] instanceof UUID) {
+                        return worlds.get((UUID) args[0]);
+                    }
+                    for (World world : worlds.values()) {
+                        if (world.getName().equals(args[0])) {
+                            return world;
+                        }
+                    }
+                    return null;
+                default:
+                    return StandIns.UNHANDLED;
+            }
+        });
+        Bukkit.setServer(server);
+    }
+
+    /**
+     * Get the server stand-in, and register it with Bukkit if that hasn't
+     * been done yet
+     *
+     * @return the server stand-in
+     */
+    public static synchronized BenchmarkServer get() {
+        if (instance == null) {
+            instance = new BenchmarkServer();
+        }
+        return instance;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * Get a world with the given name, creating it if it doesn't exist yet
+     *
+     * @param name the name of the world
+     * @return the world
+     */
+    public World getWorld(String name) {
+        World world = StandIns.world(name);
+        World existing = worlds.putIfAbsent(world.getUID(), world);
+        return existing != null ? existing : world;
+    }
+
+    /**
+     * Get the number of events that have been called since the server
+     * started
+     *
+     * @return the number of called events
+     */
+    public long getCalledEvents() {
+        return calledEvents.sum();
+    }
+
+    /**
+     * Run the tasks that are due in the next tick
+     *
+     * @return the number of tasks that have been run
+     */
+    public int tick() {
+        List<Task> due = new ArrayList<>();
+        synchronized (tasks) {
+            currentTick++;
+            Iterator<Task> iterator = tasks.iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                if (task.cancelled) {
+                    iterator.remove();
+                } else if (task.dueTick <= currentTick) {
+                    due.add(task);
+                    if (task.period > 0) {
+                        task.dueTick = currentTick + task.period;
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        for (Task task : due) {
+            if (!task.cancelled) {
+                task.runnable.run();
+            }
+        }
+        return due.size();
+    }
+
+    /**
+     * Cancel all tasks, like a server does when the plugin is disabled
+     */
+    public void cancelTasks() {
+        synchronized (tasks) {
+            for (Task task : tasks) {
+                task.cancelled = true;
+            }
+            tasks.clear();
+        }
+    }
+
+    private Object schedule(String method, Object[] args) {
+        switch (method) {
+            case "runTask":
+                return addTask((Runnable) args[1], 1, 0);
+            case "runTaskLater":
+                return addTask((Runnable) args[1], Math.max(1, (Long) args[2]), 0);
+            case "runTaskTimer":
+                return addTask((Runnable) args[1], Math.max(1, (Long) args[2]), Math.max(1, (Long) args[3]));
+            case "runTaskAsynchronously":
+                Runnable runnable = (Runnable) args[1];
+                Thread thread = new Thread(runnable, "BenchmarkServer-Async");
+                thread.setDaemon(true);
+                thread.start();
+                return new Task(nextTaskId.getAndIncrement(), runnable, 0, 0).standIn;
+            case "isCurrentlyRunning":
+            case "isQueued":
+                return false;
+            default:
+                return StandIns.UNHANDLED;
+        }
+    }
+
+    private BukkitTask addTask(Runnable runnable, long delay, long period) {
+        Task task = new Task(nextTaskId.getAndIncrement(), runnable, 0, period);
+        synchronized (tasks) {
+            task.dueTick = currentTick + delay;
+            tasks.add(task);
+        }
+        return task.standIn;
+    }
+
+    private static final class Task {
+
+        private final Runnable runnable;
+        private final long period;
+        private final BukkitTask standIn;
+        private volatile boolean cancelled;
+        private long dueTick;
+
+        private Task(int id, Runnable runnable, long dueTick, long period) {
+            this.runnable = runnable;
+            this.dueTick = dueTick;
+            this.period = period;
+            this.standIn = StandIns.create(BukkitTask.class, (method, args) -> {
+                switch (method) {
+                    case "getTaskId":
+                        return id;
+                    case "cancel":
+                        cancelled = true;
+                        return null;
+                    case "isCancelled":
+                        return cancelled;
+                    default:
+                        return StandIns.UNHANDLED;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import com.github.cc007.headsweeper.controller.BoardIndex;
+import com.github.cc007.headsweeper.controller.HeadSweeperController;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lookups that are done for every click and every board that
+ * is created: finding the game at a block, checking if a new board intersects
+ * an existing one and indexing all boards, which is what the plugin does
+ * instead of setting metadata on every tile. The linear benchmarks answer the
+ * same queries the way the plugin used to, by checking every board.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardLookupBenchmark {
+
+    private static final int QUERY_COUNT = 4096;
+    private static final int QUERY_MASK = QUERY_COUNT - 1;
+
+    @Param({"1", "100", "10000"})
+    public int boardCount;
+
+    @Param({"8", "32"})
+    public int boardSize;
+
+    private BenchmarkPlugin plugin;
+    private HeadSweeperController controller;
+    private List<HeadSweeperGame> games;
+    private World world;
+    private Block[] clickedBlocks;
+    private int[][] newBoards;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        plugin = BenchmarkPlugin.enable();
+        controller = plugin.getController();
+        world = plugin.getBenchmarkServer().getWorld("lookup");
+        games = plugin.createBoards(world, boardCount, boardSize, SweeperEngine.PACKED);
+
+        // half of the queries hit a tile, the other half misses all boards
+        SplittableRandom random = new SplittableRandom(42);
+        clickedBlocks = new Block[QUERY_COUNT];
+        newBoards = new int[QUERY_COUNT][];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            HeadSweeperGame game = games.get(random.nextInt(games.size()));
+            int x = game.getX() + random.nextInt(boardSize);
+            int z = game.getZ() + random.nextInt(boardSize);
+            int y = random.nextBoolean() ? game.getY() : game.getY() + 10;
+            clickedBlocks[i] = StandIns.block(world, x, y, z);
+            int size = 1 + random.nextInt(boardSize);
+            newBoards[i] = new int[]{game.getX() + random.nextInt(boardSize * 2) - boardSize, game.getY(), game.getZ() + random.nextInt(boardSize * 2) - boardSize, size, size};
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.disable();
+    }
+
+    @Benchmark
+    public HeadSweeperGame getActiveGame() {
+        return controller.getActiveGame(clickedBlocks[next++ & QUERY_MASK]);
+    }
+
+    @Benchmark
+    public boolean isIntersecting() {
+        int[] board = newBoards[next++ & QUERY_MASK];
+        return controller.isIntersecting(world, board[0], board[1], board[2], board[3], board[4]);
+    }
+
+    @Benchmark
+    public HeadSweeperGame getActiveGameLinear() {
+        Block block = clickedBlocks[next++ & QUERY_MASK];
+        for (HeadSweeperGame game : games) {
+            if (game.isInField(block.getWorld(), block.getX(), block.getY(), block.getZ())) {
+                return game;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public boolean isIntersectingLinear() {
+        int[] board = newBoards[next++ & QUERY_MASK];
+        for (HeadSweeperGame game : games) {
+            if (game.isIntersecting(world, board[0], board[1], board[2], board[3], board[4])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public BoardIndex indexBoards() {
+        BoardIndex boardIndex = new BoardIndex();
+        boardIndex.addAll(games);
+        return boardIndex;
+    }
+}
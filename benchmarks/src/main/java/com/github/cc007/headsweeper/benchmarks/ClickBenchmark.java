@@ -0,0 +1,124 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import com.github.cc007.headsweeper.controller.HeadSweeperClickListener;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the full click path of
+ * {@link HeadSweeperClickListener#headClicked(int, int, int, Player,
+ * HeadSweeperGame)}: the lookup of the clicked game, the sweep, the journal
+ * record and the server tick in which the update queue redraws the board and
+ * the journal is handed to the writer thread. The tiles are clicked in a
+ * random order and the board is reset once the game has ended.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ClickBenchmark {
+
+    @Param({"1", "100"})
+    public int boardCount;
+
+    @Param({"8", "32", "128"})
+    public int boardSize;
+
+    @Param({"mcsweeper", "packed"})
+    public String engine;
+
+    private BenchmarkPlugin plugin;
+    private HeadSweeperClickListener clickListener;
+    private HeadSweeperGame game;
+    private Player player;
+    private int[] tiles;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        plugin = BenchmarkPlugin.enable();
+        World world = plugin.getBenchmarkServer().getWorld("click");
+        game = plugin.createBoards(world, boardCount, boardSize, SweeperEngine.fromName(engine)).get(boardCount - 1);
+        player = StandIns.player("clicker", new Location(world, game.getX(), game.getY() + 1, game.getZ()));
+        clickListener = new HeadSweeperClickListener(plugin);
+        tiles = new int[boardSize * boardSize];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = i;
+        }
+        shuffle(new SplittableRandom(42));
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.disable();
+    }
+
+    @Benchmark
+    public HeadSweeperGame headClicked() {
+        if (next == tiles.length || game.getGame().hasWon() || game.getGame().hasLost()) {
+            game.getGame().resetField();
+            next = 0;
+        }
+        int tile = tiles[next++];
+        int x = game.getX() + tile % boardSize;
+        int z = game.getZ() + tile / boardSize;
+        HeadSweeperGame clickedGame = plugin.getController().getActiveGame(StandIns.block(game.getWorld(), x, game.getY(), z));
+        clickListener.headClicked(x, game.getY(), z, player, clickedGame);
+        plugin.getBenchmarkServer().tick();
+        return clickedGame;
+    }
+
+    private void shuffle(SplittableRandom random) {
+        for (int i = tiles.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tile = tiles[i];
+            tiles[i] = tiles[j];
+            tiles[j] = tile;
+        }
+    }
+}
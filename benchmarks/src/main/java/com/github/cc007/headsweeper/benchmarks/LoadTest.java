@@ -0,0 +1,388 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import com.github.cc007.headsweeper.commands.HeadSweeperCommand;
+import com.github.cc007.headsweeper.controller.HeadSweeperClickListener;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.metrics.Histogram;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates many players that click many boards, to find out how much load
+ * a server can take and to catch regressions between releases. The players
+ * click through {@link HeadSweeperClickListener} and reset finished boards
+ * through {@link HeadSweeperCommand}, while the stand-in server runs the
+ * scheduled tasks of the plugin every tick. The report contains the
+ * distribution of the tick times, the allocation rate of the main thread and
+ * the render and save throughput.
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.github.cc007.headsweeper.benchmarks.LoadTest --players 200 --boards 50
+ * </pre>
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class LoadTest {
+
+    private static final long TICK_NANOS = 50_000_000L;
+    private static final int RESET_RETRY_TICKS = 40;
+
+    private static final String USAGE = "Use: LoadTest [--players <count>] [--boards <count>] [--board-size <size>]"
+            + " [--engine mcsweeper|packed] [--clicks-per-second <rate per player>] [--flag-ratio <0-1>]"
+            + " [--warmup-ticks <ticks>] [--ticks <ticks>] [--realtime true|false] [--seed <seed>] [--result <json file>]";
+
+    private final int playerCount;
+    private final int boardCount;
+    private final int boardSize;
+    private final SweeperEngine engine;
+    private final double clicksPerSecond;
+    private final double flagRatio;
+    private final int warmupTicks;
+    private final int ticks;
+    private final boolean realtime;
+    private final long seed;
+
+    private BenchmarkPlugin plugin;
+    private HeadSweeperClickListener clickListener;
+    private HeadSweeperCommand command;
+    private List<SimulatedPlayer> players;
+    private Map<HeadSweeperGame, Long> resetTicks;
+    private long resetCommands;
+
+    private LoadTest(Map<String, String> options) {
+        this.playerCount = Integer.parseInt(options.getOrDefault("players", "50"));
+        this.boardCount = Integer.parseInt(options.getOrDefault("boards", "20"));
+        this.boardSize = Integer.parseInt(options.getOrDefault("board-size", "16"));
+        this.engine = SweeperEngine.fromName(options.getOrDefault("engine", "packed"));
+        this.clicksPerSecond = Double.parseDouble(options.getOrDefault("clicks-per-second", "2"));
+        this.flagRatio = Double.parseDouble(options.getOrDefault("flag-ratio", "0.1"));
+        this.warmupTicks = Integer.parseInt(options.getOrDefault("warmup-ticks", "200"));
+        this.ticks = Integer.parseInt(options.getOrDefault("ticks", "1200"));
+        this.realtime = Boolean.parseBoolean(options.getOrDefault("realtime", "true"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        if (engine == null || playerCount < 1 || boardCount < 1 || boardSize < 2 || ticks < 1) {
+            throw new IllegalArgumentException(USAGE);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        LoadTest loadTest;
+        try {
+            loadTest = new LoadTest(options);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        JsonObject report = loadTest.run();
+        String resultFile = options.get("result");
+        if (resultFile != null) {
+            Files.write(Paths.get(resultFile), new GsonBuilder().setPrettyPrinting().create().toJson(report).getBytes(StandardCharsets.UTF_8));
+            System.out.println("The results have been written to " + resultFile);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Run the load test on a newly enabled plugin and print the report
+     *
+     * @return the report
+     */
+    private JsonObject run() {
+        plugin = BenchmarkPlugin.enable();
+        try {
+            setUp();
+            System.out.println("Warming up for " + warmupTicks + " ticks...");
+            long nextTick = System.nanoTime();
+            for (int tick = 0; tick < warmupTicks; tick++) {
+                runTick(tick);
+                nextTick = pace(nextTick);
+            }
+
+            System.out.println("Measuring " + ticks + " ticks...");
+            Snapshot before = new Snapshot();
+            Histogram tickTimes = new Histogram();
+            long overBudget = 0;
+            for (int tick = warmupTicks; tick < warmupTicks + ticks; tick++) {
+                long start = System.nanoTime();
+                runTick(tick);
+                long tickTime = System.nanoTime() - start;
+                tickTimes.record(tickTime);
+                if (tickTime > TICK_NANOS) {
+                    overBudget++;
+                }
+                nextTick = pace(nextTick);
+            }
+            Snapshot after = new Snapshot();
+
+            JsonObject report = report(before, after, tickTimes, overBudget);
+            CommandSender console = StandIns.commandSender("console", message -> System.out.println(ChatColor.stripColor(message)));
+            command.onCommand(console, null, "headsweeper", new String[]{"stats"});
+            return report;
+        } finally {
+            plugin.disable();
+        }
+    }
+
+    private void setUp() {
+        World world = plugin.getBenchmarkServer().getWorld("loadtest");
+        List<HeadSweeperGame> games = plugin.createBoards(world, boardCount, boardSize, engine);
+        clickListener = new HeadSweeperClickListener(plugin);
+        command = new HeadSweeperCommand(plugin);
+        players = new ArrayList<>(playerCount);
+        resetTicks = new IdentityHashMap<>();
+        for (int i = 0; i < playerCount; i++) {
+            HeadSweeperGame game = games.get(i % games.size());
+            Location location = new Location(world, game.getX() + boardSize / 2, game.getY() + 1, game.getZ() + boardSize / 2);
+            players.add(new SimulatedPlayer(
+                    StandIns.player("player" + i, location),
+                    StandIns.block(world, game.getX(), game.getY(), game.getZ()),
+                    new SplittableRandom(seed + i)));
+        }
+    }
+
+    /**
+     * Let every player click as often as its click rate allows and run the
+     * scheduled tasks of the server
+     */
+    private void runTick(long tick) {
+        double clicksPerTick = clicksPerSecond / 20;
+        for (SimulatedPlayer player : players) {
+            player.credit += clicksPerTick;
+            while (player.credit >= 1) {
+                player.credit--;
+                click(player, tick);
+            }
+        }
+        plugin.getBenchmarkServer().tick();
+    }
+
+    private void click(SimulatedPlayer player, long tick) {
+        HeadSweeperGame game = plugin.getController().getActiveGame(player.board);
+        if (game == null) {
+            return;
+        }
+        if (game.getGame().hasWon() || game.getGame().hasLost()) {
+            requestReset(player, game, tick);
+            return;
+        }
+        int tile = player.random.nextInt(boardSize * boardSize);
+        int x = game.getX() + tile % boardSize;
+        int z = game.getZ() + tile / boardSize;
+        if (player.random.nextDouble() < flagRatio) {
+            clickListener.headFlagged(x, game.getY(), z, player.player, game);
+        } else {
+            clickListener.headClicked(x, game.getY(), z, player.player, game);
+        }
+    }
+
+    /**
+     * Reset a finished board with the reset command, unless a reset of that
+     * board has been requested recently. The reset itself is asynchronous.
+     */
+    private void requestReset(SimulatedPlayer player, HeadSweeperGame game, long tick) {
+        Long lastReset = resetTicks.get(game);
+        if (lastReset != null && tick - lastReset < RESET_RETRY_TICKS) {
+            return;
+        }
+        resetTicks.put(game, tick);
+        command.onCommand(player.player, null, "headsweeper", new String[]{"reset", Integer.toString(game.getId())});
+        resetCommands++;
+    }
+
+    /**
+     * Wait until the next tick should start, if the test runs in real time
+     *
+     * @param nextTick the time at which the current tick started
+     * @return the time at which the next tick starts
+     */
+    private long pace(long nextTick) {
+        if (!realtime) {
+            return nextTick;
+        }
+        nextTick += TICK_NANOS;
+        long delay = nextTick - System.nanoTime();
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+            return nextTick;
+        }
+        // the tick took too long, like a lagging server the next tick starts right away
+        return System.nanoTime();
+    }
+
+    private JsonObject report(Snapshot before, Snapshot after, Histogram tickTimes, long overBudget) {
+        double seconds = (after.time - before.time) / 1e9;
+        long sweeps = after.sweeps - before.sweeps;
+        long flags = after.flags - before.flags;
+        long allocated = after.allocatedBytes - before.allocatedBytes;
+        long placedHeads = after.placedHeads - before.placedHeads;
+        long savedBytes = after.savedBytes - before.savedBytes;
+        long journalBytes = after.journalBytes - before.journalBytes;
+
+        System.out.println(String.format("%d players on %d boards of %dx%d (%s), %.1f clicks per second per player, %d ticks in %.1f seconds",
+                playerCount, boardCount, boardSize, boardSize, engine.getName(), clicksPerSecond, ticks, seconds));
+        System.out.println(String.format("Tick time: mean %s, p50 %s, p90 %s, p99 %s, p99.9 %s, max %s, %d ticks over 50ms",
+                millis(Math.round(tickTimes.getMean())), millis(tickTimes.getPercentile(50)), millis(tickTimes.getPercentile(90)),
+                millis(tickTimes.getPercentile(99)), millis(tickTimes.getPercentile(99.9)), millis(tickTimes.getMax()), overBudget));
+        System.out.println(String.format("Clicks: %d sweeps, %d flags, %d throttled, %d resets, %.0f clicks per second",
+                sweeps, flags, after.throttled - before.throttled, resetCommands, (sweeps + flags) / seconds));
+        System.out.println(String.format("Allocation (main thread): %.1f MB per second, %.1f KB per tick, %d collections in %d ms",
+                allocated / seconds / (1 << 20), allocated / 1024.0 / ticks, after.gcCount - before.gcCount, after.gcTime - before.gcTime));
+        System.out.println(String.format("Render: %d heads, %.0f heads per second", placedHeads, placedHeads / seconds));
+        System.out.println(String.format("Save: %d snapshots, %.1f KB per second, journal %.1f KB per second",
+                after.saves - before.saves, savedBytes / seconds / 1024, journalBytes / seconds / 1024));
+
+        JsonObject report = new JsonObject();
+        report.addProperty("players", playerCount);
+        report.addProperty("boards", boardCount);
+        report.addProperty("boardSize", boardSize);
+        report.addProperty("engine", engine.getName());
+        report.addProperty("clicksPerSecond", clicksPerSecond);
+        report.addProperty("ticks", ticks);
+        report.addProperty("seconds", seconds);
+        JsonObject tickTime = new JsonObject();
+        tickTime.addProperty("meanNanos", tickTimes.getMean());
+        tickTime.addProperty("p50Nanos", tickTimes.getPercentile(50));
+        tickTime.addProperty("p90Nanos", tickTimes.getPercentile(90));
+        tickTime.addProperty("p99Nanos", tickTimes.getPercentile(99));
+        tickTime.addProperty("p999Nanos", tickTimes.getPercentile(99.9));
+        tickTime.addProperty("maxNanos", tickTimes.getMax());
+        tickTime.addProperty("overBudget", overBudget);
+        report.add("tickTime", tickTime);
+        report.addProperty("sweeps", sweeps);
+        report.addProperty("flags", flags);
+        report.addProperty("throttled", after.throttled - before.throttled);
+        report.addProperty("resets", resetCommands);
+        report.addProperty("allocatedBytesPerSecond", allocated / seconds);
+        report.addProperty("gcCount", after.gcCount - before.gcCount);
+        report.addProperty("gcMillis", after.gcTime - before.gcTime);
+        report.addProperty("placedHeadsPerSecond", placedHeads / seconds);
+        report.addProperty("saves", after.saves - before.saves);
+        report.addProperty("savedBytesPerSecond", savedBytes / seconds);
+        report.addProperty("journalBytesPerSecond", journalBytes / seconds);
+        return report;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static final class SimulatedPlayer {
+
+        private final Player player;
+        private final Block board;
+        private final SplittableRandom random;
+        private double credit;
+
+        private SimulatedPlayer(Player player, Block board, SplittableRandom random) {
+            this.player = player;
+            this.board = board;
+            this.random = random;
+        }
+    }
+
+    /**
+     * The counters at the start or the end of the measurement
+     */
+    private final class Snapshot {
+
+        private final long time;
+        private final long sweeps;
+        private final long flags;
+        private final long throttled;
+        private final long placedHeads;
+        private final long saves;
+        private final long savedBytes;
+        private final long journalBytes;
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcTime;
+
+        private Snapshot() {
+            MetricsRegistry metrics = plugin.getMetricsRegistry();
+            this.time = System.nanoTime();
+            this.sweeps = metrics.getCount(MetricsRegistry.CLICK_SWEEPS);
+            this.flags = metrics.getCount(MetricsRegistry.CLICK_FLAGS);
+            this.throttled = metrics.getCount(MetricsRegistry.CLICK_THROTTLED);
+            this.placedHeads = plugin.getPlacedHeads();
+            this.saves = metrics.histogram(MetricsRegistry.SAVE_WRITE_TIME).getCount();
+            this.savedBytes = metrics.getCount(MetricsRegistry.SAVE_BYTES);
+            this.journalBytes = metrics.getCount(MetricsRegistry.JOURNAL_BYTES);
+            this.allocatedBytes = allocatedBytes();
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            this.gcCount = count;
+            this.gcTime = millis;
+        }
+    }
+
+    /**
+     * Get the number of bytes that the current thread has allocated, or 0 if
+     * the JVM can't measure that
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,130 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import com.github.cc007.headsweeper.controller.HeadSweeperController;
+import com.github.cc007.headsweeper.storage.BoardCodec;
+import com.github.cc007.headsweeper.storage.BoardData;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import com.google.gson.JsonObject;
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks saving and loading the boards: the json format of
+ * sweeperGames.json that {@link HeadSweeperController#serialize()} and
+ * {@link HeadSweeperController#HeadSweeperController(JsonObject,
+ * com.github.cc007.headsweeper.HeadSweeper)} use, and the binary snapshot of
+ * sweeperGames.dat that saveGames writes. The snapshot benchmarks leave out
+ * the file writes, which are done on the writer thread.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PersistenceBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int boardCount;
+
+    @Param({"8", "32", "64"})
+    public int boardSize;
+
+    @Param({"mcsweeper", "packed"})
+    public String engine;
+
+    private BenchmarkPlugin plugin;
+    private HeadSweeperController controller;
+    private JsonObject json;
+    private ByteBuffer snapshot;
+
+    @Setup
+    public void setUp() {
+        plugin = BenchmarkPlugin.enable();
+        controller = plugin.getController();
+        World world = plugin.getBenchmarkServer().getWorld("persistence");
+        plugin.createBoards(world, boardCount, boardSize, SweeperEngine.fromName(engine));
+        json = controller.serialize();
+        snapshot = BoardCodec.encode(1, controller.snapshot(), Collections.emptyList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.disable();
+    }
+
+    @Benchmark
+    public JsonObject serialize() {
+        return controller.serialize();
+    }
+
+    @Benchmark
+    public HeadSweeperController loadJson() {
+        return new HeadSweeperController(json, plugin);
+    }
+
+    /**
+     * The work that saveGames does on the main thread and the writer thread,
+     * apart from writing the file
+     */
+    @Benchmark
+    public ByteBuffer saveGames() {
+        List<BoardData> boards = controller.snapshot();
+        return BoardCodec.encode(1, boards, controller.snapshotPendingClears());
+    }
+
+    /**
+     * The part of saveGames that runs on the main thread
+     */
+    @Benchmark
+    public List<BoardData> snapshot() {
+        return controller.snapshot();
+    }
+
+    @Benchmark
+    public BoardCodec.Snapshot decodeSnapshot() throws IOException {
+        return BoardCodec.decode(snapshot.duplicate());
+    }
+}
@@ -0,0 +1,160 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import com.github.cc007.headsplugin.api.HeadsPluginServices;
+import com.github.cc007.headsplugin.api.business.domain.Head;
+import com.github.cc007.headsplugin.api.business.services.heads.HeadPlacer;
+import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import com.github.cc007.mcsweeper.api.Field;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+import org.bukkit.plugin.ServicePriority;
+import org.bukkit.plugin.ServicesManager;
+import org.bukkit.plugin.SimpleServicesManager;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Benchmarks {@link HeadSweeperGame#placeHeads()}. Every invocation redraws
+ * the whole board. The placed tiles are reported as a secondary result, so
+ * that the results can be compared in tiles per millisecond.
+ * <p>
+ * {@link #placeHeadsPerTile(PlacedTiles)} redraws the board the way the
+ * plugin used to: it reads the state of a tile up to four times, looks the
+ * number heads up in a map with boxed keys, looks the head placer up in a
+ * services manager and creates a new location for every tile.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    @Param({"8", "32", "128"})
+    public int boardSize;
+
+    @Param({"mcsweeper", "packed"})
+    public String engine;
+
+    private BenchmarkPlugin plugin;
+    private HeadSweeperGame game;
+    private ServicesManager servicesManager;
+    private LongAdder placedPerTile;
+
+    /**
+     * The number of tiles that have been placed in the current iteration
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class PlacedTiles {
+
+        public long tiles;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tiles = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        plugin = BenchmarkPlugin.enable();
+        World world = plugin.getBenchmarkServer().getWorld("render");
+        List<HeadSweeperGame> games = plugin.createBoards(world, 1, boardSize, SweeperEngine.fromName(engine));
+        game = games.get(0);
+        // reveal part of the board, so that not every tile uses the same head
+        game.getGame().sweep(boardSize / 2, boardSize / 2);
+
+        placedPerTile = new LongAdder();
+        servicesManager = new SimpleServicesManager();
+        servicesManager.register(HeadsPluginServices.class, StandIns.headsPluginServices(StandIns.headPlacer(placedPerTile)), plugin, ServicePriority.Normal);
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.disable();
+    }
+
+    @Benchmark
+    public long placeHeads(PlacedTiles placedTiles) {
+        long placedBefore = plugin.getPlacedHeads();
+        game.invalidateTiles();
+        game.placeHeads();
+        long placed = plugin.getPlacedHeads() - placedBefore;
+        placedTiles.tiles += placed;
+        return placed;
+    }
+
+    @Benchmark
+    public long placeHeadsPerTile(PlacedTiles placedTiles) {
+        long placedBefore = placedPerTile.sum();
+        Field field = game.getGame().getField();
+        for (int i = 0; i < field.getWidth(); i++) {
+            for (int j = 0; j < field.getHeight(); j++) {
+                HeadPlacer headPlacer = servicesManager.load(HeadsPluginServices.class).headPlacer();
+                Location headLocation = new Location(game.getWorld(), game.getX() + i, game.getY(), game.getZ() + j);
+                headPlacer.placeHead(getHeadAt(field, i, j), headLocation, BlockFace.NORTH);
+            }
+        }
+        long placed = placedPerTile.sum() - placedBefore;
+        placedTiles.tiles += placed;
+        return placed;
+    }
+
+    private static Head getHeadAt(Field field, int x, int y) {
+        if (field.getState(x, y) == Field.BOMB_STATE) {
+            return HeadSweeper.BOMB_HEAD;
+        } else if (field.getState(x, y) == Field.UNKNOWN_STATE) {
+            return HeadSweeper.UNKNOWN_HEAD;
+        } else if (field.getState(x, y) == Field.FLAG_STATE) {
+            return HeadSweeper.FLAG_HEAD;
+        } else {
+            return HeadSweeper.NUMBER_HEADS.get(field.getState(x, y));
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.benchmarks;
+
+import com.github.cc007.headsplugin.api.HeadsPluginServices;
+import com.github.cc007.headsplugin.api.business.services.heads.HeadPlacer;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Local stand-ins for the parts of the server that the plugin talks to. The
+ * stand-ins are dynamic proxies, so that they don't depend on the exact
+ * version of the Bukkit and HeadsPlugin interfaces. Methods that aren't
+ * handled return a default value.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class StandIns {
+
+    private StandIns() {
+    }
+
+    /**
+     * Handles a single method call of a stand-in
+     */
+    interface Handler {
+
+        /**
+         * Handle a method call
+         *
+         * @param name the name of the method
+         * @param args the arguments, never null
+         * @return the result of the call, or {@link #UNHANDLED} to return
+         * the default value of the return type
+         */
+        Object invoke(String name, Object[] args);
+    }
+
+    static final Object UNHANDLED = new Object();
+
+    /**
+     * Create a stand-in for an interface
+     *
+     * @param <T> the type of the interface
+     * @param type the interface
+     * @param handler the handler of the method calls
+     * @return the stand-in
+     */
+    static <T> T create(Class<T> type, Handler handler) {
+        String description = "StandIn[" + type.getSimpleName() + "]";
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            Object[] arguments = args == null ? new Object[0] : args;
+            switch (method.getName()) {
+                case "equals":
+                    if (arguments.length == 1 && method.getParameterTypes()[0] == Object.class) {
+                        return proxy == arguments[0];
+                    }
+                    break;
+                case "hashCode":
+                    if (arguments.length == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "toString":
+                    if (arguments.length == 0) {
+                        return description;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            Object result = handler.invoke(method.getName(), arguments);
+            return result == UNHANDLED ? defaultValue(method) : result;
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocationHandler));
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == List.class || type == Collection.class) {
+            return Collections.emptyList();
+        } else if (type == Set.class) {
+            return Collections.emptySet();
+        } else if (type == Map.class) {
+            return Collections.emptyMap();
+        }
+        return null;
+    }
+
+    /**
+     * Create a world in which every chunk is loaded and no players are
+     * online. Blocks can be looked up, but changing them has no effect.
+     *
+     * @param name the name of the world
+     * @return the world
+     */
+    public static World world(String name) {
+        UUID uid = UUID.nameUUIDFromBytes(name.getBytes());
+        World[] world = new World[1];
+        world[0] = create(World.class, (method, args) -> {
+            switch (method) {
+                case "getUID":
+                    return uid;
+                case "getName":
+                    return name;
+                case "isChunkLoaded":
+                    return true;
+                case "getBlockAt":
+                    if (args.length == 3) {
+                        return block(world[0], (Integer) args[0], (Integer) args[1], (Integer) args[2]);
+                    }
+                    Location location = (Location) args[0];
+                    return block(world[0], location.getBlockX(), location.getBlockY(), location.getBlockZ());
+                default:
+                    return UNHANDLED;
+            }
+        });
+        return world[0];
+    }
+
+    /**
+     * Create a block of a world
+     *
+     * @param world the world of the block
+     * @param x the x coordinate of the block
+     * @param y the y coordinate of the block
+     * @param z the z coordinate of the block
+     * @return the block
+     */
+    public static Block block(World world, int x, int y, int z) {
+        return create(Block.class, (method, args) -> {
+            switch (method) {
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                case "getLocation":
+                    return new Location(world, x, y, z);
+                case "getType":
+                    return Material.AIR;
+                default:
+                    return UNHANDLED;
+            }
+        });
+    }
+
+    /**
+     * Create an online player that has every permission
+     *
+     * @param name the name of the player
+     * @param location the location of the player
+     * @return the player
+     */
+    public static Player player(String name, Location location) {
+        UUID uid = UUID.nameUUIDFromBytes(name.getBytes());
+        return create(Player.class, (method, args) -> {
+            switch (method) {
+                case "getUniqueId":
+                    return uid;
+                case "getName":
+                case "getDisplayName":
+                    return name;
+                case "hasPermission":
+                case "isOnline":
+                    return true;
+                case "getWorld":
+                    return location.getWorld();
+                case "getLocation":
+                    return location.clone();
+                default:
+                    return UNHANDLED;
+            }
+        });
+    }
+
+    /**
+     * Create a command sender that has every permission and passes the
+     * messages that it receives on to a consumer
+     *
+     * @param name the name of the command sender
+     * @param messages the consumer of the messages
+     * @return the command sender
+     */
+    public static CommandSender commandSender(String name, Consumer<String> messages) {
+        return create(CommandSender.class, (method, args) -> {
+            switch (method) {
+                case "getName":
+                    return name;
+                case "hasPermission":
+                case "isOp":
+                    return true;
+                case "sendMessage":
+                    if (args[0] instanceof String) {
+                        messages.accept((String) args[0]);
+                    } else if (args[0] instanceof String[]) {
+                        for (String message : (String[]) args[0]) {
+                            messages.accept(message);
+                        }
+                    }
+                    return null;
+                default:
+                    return UNHANDLED;
+            }
+        });
+    }
+
+    /**
+     * Create a head placer that only counts the heads that it places
+     *
+     * @param placedHeads the counter of the placed heads
+     * @return the head placer
+     */
+    public static HeadPlacer headPlacer(LongAdder placedHeads) {
+        return create(HeadPlacer.class, (method, args) -> {
+            if (method.equals("placeHead")) {
+                placedHeads.increment();
+            }
+            return UNHANDLED;
+        });
+    }
+
+    /**
+     * Create HeadsPlugin services that only provide the given head placer
+     *
+     * @param headPlacer the head placer
+     * @return the services
+     */
+    public static HeadsPluginServices headsPluginServices(HeadPlacer headPlacer) {
+        return create(HeadsPluginServices.class, (method, args) -> method.equals("headPlacer") ? headPlacer : UNHANDLED);
+    }
+}
@@ -25,31 +25,52 @@ package com.github.cc007.headsweeper;
 
 import com.github.cc007.headsplugin.api.HeadsPluginApi;
 import com.github.cc007.headsplugin.api.business.domain.Head;
+import com.github.cc007.headsplugin.api.business.services.heads.HeadPlacer;
 import com.github.cc007.headsplugin.api.business.services.heads.HeadSearcher;
 import com.github.cc007.headsweeper.commands.HeadSweeperCommand;
+import com.github.cc007.headsweeper.controller.AutoResetScheduler;
+import com.github.cc007.headsweeper.controller.BoardUpdateQueue;
+import com.github.cc007.headsweeper.controller.HeadSweeperChunkListener;
 import com.github.cc007.headsweeper.controller.HeadSweeperClickListener;
 import com.github.cc007.headsweeper.controller.HeadSweeperController;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.controller.ProximityTracker;
+import com.github.cc007.headsweeper.controller.RenderScheduler;
+import com.github.cc007.headsweeper.controller.TileHeads;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import com.github.cc007.headsweeper.stats.StatsTracker;
+import com.github.cc007.headsweeper.sync.BoardSync;
+import com.github.cc007.headsweeper.sync.BoardSyncBackend;
+import com.github.cc007.headsweeper.storage.GameLoader;
+import com.github.cc007.headsweeper.storage.GamePersister;
+import com.github.cc007.headsweeper.storage.HeadCache;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.logging.Level;
 import net.milkbowl.vault.permission.Permission;
 import org.bstats.bukkit.Metrics;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
 /**
  *
@@ -61,12 +82,42 @@ public class HeadSweeper extends JavaPlugin {
     public static Head FLAG_HEAD;
     public static Head BOMB_HEAD;
     public static Map<Integer, Head> NUMBER_HEADS;
+    public static TileHeads TILE_HEADS;
+    private static final List<String> HEAD_NAMES = Arrays.asList("unknown", "flag", "bomb", "0", "1", "2", "3", "4", "5", "6", "7", "8");
     private boolean init = false;
+    private CompletableFuture<Void> headsReady;
 
     private Plugin vault = null;
     private Permission permission = null;
     private HeadSweeperClickListener clickListener;
+    private HeadSweeperChunkListener chunkListener;
+    private ProximityTracker proximityTracker;
     private HeadSweeperController controller;
+    private RenderScheduler renderScheduler;
+    private BoardUpdateQueue updateQueue;
+    private AutoResetScheduler autoResetScheduler;
+    private GamePersister persister;
+    private ForkJoinPool workers;
+    private MetricsRegistry metricsRegistry;
+    private StatsTracker statsTracker;
+    private BoardSync boardSync;
+    private boolean loaded = false;
+    private boolean debug = false;
+
+    public HeadSweeper() {
+    }
+
+    /**
+     * Create the plugin outside of a server, like in the benchmarks
+     *
+     * @param loader the plugin loader
+     * @param description the description of the plugin
+     * @param dataFolder the data folder of the plugin
+     * @param file the jar file of the plugin
+     */
+    protected HeadSweeper(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
 
     @Override
     public void onEnable() {
@@ -77,17 +128,28 @@ public class HeadSweeper extends JavaPlugin {
         } else {
             getLogger().log(Level.INFO, "Data folder already exists");
         }
+        saveDefaultConfig();
+        debug = getConfig().getBoolean("debug", false);
 
         /* Configure BStats metrics */
         Metrics metrics = new Metrics(this, 5876);
 
+        /* setup the worker threads, the controller and the schedulers */
+        setupComponents();
+        addCharts(metrics);
+
         /* Setup the sweeper heads */
         getLogger().log(Level.INFO, "Initializing minesweeper heads...");
-        initHeads();
-        getLogger().log(Level.INFO, "Sweeperheads initialized");
-        
+        initHeads(false);
+
         /* setup the listener */
         clickListener = new HeadSweeperClickListener(this);
+        chunkListener = new HeadSweeperChunkListener(this);
+        proximityTracker = new ProximityTracker(this);
+        if (getConfig().getBoolean("stats.enabled", true)) {
+            statsTracker = new StatsTracker(this, new File(getDataFolder(), "stats.db"), getConfig().getLong("stats.write-window-ticks", 100));
+            statsTracker.load();
+        }
 
         /* Setup plugin hooks */
         vault = getPlugin("Vault");
@@ -97,15 +159,119 @@ public class HeadSweeper extends JavaPlugin {
 
         /* Register commands */
         getCommand("headsweeper").setExecutor(new HeadSweeperCommand(this));
-        
-        /* setup controller */
-        Bukkit.getScheduler().runTaskLater(this, this::loadGames, 10);
 
+        loadGames();
+
+    }
+
+    /**
+     * Create the worker threads, the controller, the schedulers and the
+     * persister. The games still have to be loaded and the render scheduler
+     * is only started once the heads are ready.
+     */
+    protected void setupComponents() {
+        metricsRegistry = new MetricsRegistry();
+        int workerThreads = getConfig().getInt("worker-threads", 0);
+        if (workerThreads <= 0) {
+            workerThreads = Runtime.getRuntime().availableProcessors();
+        }
+        workers = new ForkJoinPool(workerThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("HeadSweeper-Worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+
+        controller = new HeadSweeperController(this, new ArrayList<>());
+        renderScheduler = new RenderScheduler(this,
+                getConfig().getInt("rendering.max-blocks-per-tick", 2000),
+                getConfig().getLong("rendering.max-millis-per-tick", 10));
+        updateQueue = new BoardUpdateQueue(this);
+        updateQueue.start();
+        autoResetScheduler = new AutoResetScheduler(this,
+                getConfig().getInt("auto-reset.delay-seconds", 0),
+                getConfig().getInt("auto-reset.max-per-tick", 4));
+        autoResetScheduler.start();
+        persister = new GamePersister(this,
+                new File(getDataFolder(), "sweeperGames.dat"),
+                new File(getDataFolder(), "sweeperGames.journal"),
+                getConfig().getLong("persistence.save-window-ticks", 20),
+                getConfig().getInt("persistence.compact-after-operations", 1000));
+        String serverId = getConfig().getString("sync.server-id", "");
+        boardSync = new BoardSync(this, serverId == null || serverId.isEmpty() ? UUID.randomUUID().toString() : serverId);
+
+        metricsRegistry.gauge(MetricsRegistry.BOARDS, () -> controller == null ? 0 : controller.getGameCount());
+        metricsRegistry.gauge(MetricsRegistry.TILES, () -> controller == null ? 0 : controller.getTileCount());
+        metricsRegistry.gauge(MetricsRegistry.RENDER_QUEUE, () -> renderScheduler == null ? 0 : renderScheduler.getQueuedJobs());
+        metricsRegistry.gauge(MetricsRegistry.UPDATE_QUEUE, () -> updateQueue == null ? 0 : updateQueue.size());
+        metricsRegistry.gauge(MetricsRegistry.AUTO_RESET_QUEUE, () -> autoResetScheduler == null ? 0 : autoResetScheduler.getPendingCount());
+        metricsRegistry.gauge(MetricsRegistry.JOURNAL_QUEUE, () -> persister == null ? 0 : persister.getPendingJournalBytes());
+        metricsRegistry.gauge(MetricsRegistry.SYNC_QUEUE, () -> boardSync == null ? 0 : boardSync.getPendingDeltas());
+    }
+
+    /**
+     * Add the custom charts to the BStats metrics
+     *
+     * @param metrics the BStats metrics
+     */
+    private void addCharts(Metrics metrics) {
+        metrics.addCustomChart(new Metrics.SingleLineChart("active_boards", () -> (int) metricsRegistry.getGauge(MetricsRegistry.BOARDS)));
+        metrics.addCustomChart(new Metrics.SingleLineChart("tiles", () -> (int) Math.min(Integer.MAX_VALUE, metricsRegistry.getGauge(MetricsRegistry.TILES))));
+        long[] lastClicks = {0};
+        metrics.addCustomChart(new Metrics.SingleLineChart("clicks", () -> {
+            long clicks = metricsRegistry.getCount(MetricsRegistry.CLICK_SWEEPS) + metricsRegistry.getCount(MetricsRegistry.CLICK_FLAGS);
+            int newClicks = (int) Math.min(Integer.MAX_VALUE, clicks - lastClicks[0]);
+            lastClicks[0] = clicks;
+            return newClicks;
+        }));
+        metrics.addCustomChart(new Metrics.SimplePie("default_engine", () -> getDefaultEngine().getName()));
+        metrics.addCustomChart(new Metrics.SimplePie("click_time_p99", () -> {
+            long p99 = metricsRegistry.histogram(MetricsRegistry.CLICK_TIME).getPercentile(99) / 1000;
+            if (p99 < 100) {
+                return "< 0.1 ms";
+            } else if (p99 < 1000) {
+                return "0.1 - 1 ms";
+            } else if (p99 < 5000) {
+                return "1 - 5 ms";
+            }
+            return "> 5 ms";
+        }));
     }
 
     @Override
     public void onDisable() {
         PlayerInteractEvent.getHandlerList().unregister(clickListener);
+        ChunkLoadEvent.getHandlerList().unregister(chunkListener);
+        HandlerList.unregisterAll(proximityTracker);
+        if (statsTracker != null) {
+            HandlerList.unregisterAll(statsTracker);
+            statsTracker.shutdown(getConfig().getLong("persistence.shutdown-timeout-millis", 10000));
+            statsTracker = null;
+        }
+        if (updateQueue != null) {
+            updateQueue.stop();
+            updateQueue = null;
+        }
+        if (autoResetScheduler != null) {
+            autoResetScheduler.stop();
+            autoResetScheduler = null;
+        }
+        if (boardSync != null) {
+            boardSync.stop();
+            boardSync = null;
+        }
+        if (renderScheduler != null) {
+            renderScheduler.stop();
+            renderScheduler = null;
+        }
+        if (persister != null) {
+            getLogger().log(Level.INFO, "Saving games...");
+            persister.shutdown(getConfig().getLong("persistence.shutdown-timeout-millis", 10000));
+            persister = null;
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
         vault = null;
         permission = null;
     }
@@ -169,93 +335,306 @@ public class HeadSweeper extends JavaPlugin {
     }
 
     /**
-     * Save the currently available games to a json file
+     * Get the tracker that knows which players are near a board
+     *
+     * @return the proximity tracker
      */
-    public void saveGames() {
-        File file = new File(getDataFolder(), "sweeperGames.json");
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                getLogger().log(Level.SEVERE, "Couldn't create sweeperGames.json");
-            }
-        }
+    public ProximityTracker getProximityTracker() {
+        return proximityTracker;
+    }
 
-        JsonObject json = controller.serialize();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, false))) {
-            writer.write(json.toString());
-            writer.flush();
-        } catch (IOException ex) {
-            getLogger().log(Level.SEVERE, "Couldn't write to sweeperGames.json");
+    /**
+     * Get the engine that new boards use when no engine is specified
+     *
+     * @return the default engine
+     */
+    public SweeperEngine getDefaultEngine() {
+        SweeperEngine engine = SweeperEngine.fromName(getConfig().getString("default-engine", SweeperEngine.MCSWEEPER.getName()));
+        return engine == null ? SweeperEngine.MCSWEEPER : engine;
+    }
+
+    /**
+     * Get the maximum number of boards that a single arena may have
+     *
+     * @return the maximum number of boards
+     */
+    public int getMaxArenaBoards() {
+        return getConfig().getInt("arena.max-boards", 256);
+    }
+
+    /**
+     * Get if debug logging is enabled
+     *
+     * @return true if debug logging is enabled
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Get the queue that renders the boards that changed because of clicks
+     *
+     * @return the board update queue
+     */
+    public BoardUpdateQueue getUpdateQueue() {
+        return updateQueue;
+    }
+
+    /**
+     * Get the scheduler that resets boards some time after they have been won
+     * or lost
+     *
+     * @return the auto reset scheduler
+     */
+    public AutoResetScheduler getAutoResetScheduler() {
+        return autoResetScheduler;
+    }
+
+    /**
+     * Get the scheduler that spreads the rendering of boards over multiple
+     * ticks
+     *
+     * @return the render scheduler
+     */
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
+    }
+
+    /**
+     * Get the persister that saves the games
+     *
+     * @return the persister that saves the games
+     */
+    public GamePersister getPersister() {
+        return persister;
+    }
+
+    /**
+     * Get the registry that keeps track of the performance metrics
+     *
+     * @return the metrics registry
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Get the tracker that records the statistics and leaderboards of the
+     * players
+     *
+     * @return the stats tracker, or null if the statistics are disabled
+     */
+    public StatsTracker getStatsTracker() {
+        return statsTracker;
+    }
+
+    /**
+     * Get the component that keeps the boards in sync with other servers
+     *
+     * @return the board sync
+     */
+    public BoardSync getBoardSync() {
+        return boardSync;
+    }
+
+    /**
+     * Save the currently available games to sweeperGames.dat. The games are
+     * written on a background thread and saves that are requested shortly
+     * after each other are combined into a single write.
+     */
+    public void saveGames() {
+        if (persister != null) {
+            persister.requestSave();
         }
     }
 
     /**
-     * load the list of available games from the json file
+     * load the list of available games from sweeperGames.dat on the worker
+     * threads. If there is no sweeperGames.dat yet, the games are migrated
+     * from sweeperGames.json. The loaded games are registered on the main
+     * thread.
+     *
+     * @return a future that completes when the games have been registered
      */
-    public void loadGames() {
+    public CompletableFuture<Void> loadGames() {
         getLogger().log(Level.INFO, "Loading games...");
-        File file = new File(getDataFolder(), "sweeperGames.json");
-        if (!file.exists()) {
-            getLogger().log(Level.INFO, "First use of this plugin: generate sweeperGames.json");
-            try {
-                file.createNewFile();
-            } catch (IOException ex) {
-                getLogger().log(Level.SEVERE, "Couldn't create sweeperGames.json");
-            }
-            getLogger().log(Level.INFO, "Games loaded.");
+        File dataFile = new File(getDataFolder(), "sweeperGames.dat");
+        File jsonFile = new File(getDataFolder(), "sweeperGames.json");
+        GameLoader loader = new GameLoader(getLogger(), dataFile, jsonFile, persister.getJournal(), workers);
+        return loader.load()
+                .thenAcceptAsync(result -> registerGames(result, dataFile, jsonFile), getMainThreadExecutor())
+                .exceptionally(ex -> {
+                    getLogger().log(Level.SEVERE, "Couldn't load the games, sweeperGames.dat and sweeperGames.journal have been left untouched", ex);
+                    return null;
+                });
+    }
+
+    private void registerGames(GameLoader.Result result, File dataFile, File jsonFile) {
+        getLogger().log(Level.INFO, "Registering {0} games...", result.getBoards().size());
+        for (GameLoader.LoadedBoard board : result.getBoards()) {
+            HeadSweeperGame game = new HeadSweeperGame(board.getData(), board.getGame(), this);
+            game.setSyncVersion(board.getSyncVersion());
+            controller.addGame(board.getId(), game);
+            autoResetScheduler.gameEnded(game);
         }
-        try (Scanner scanner = new Scanner(file)) {
-            String jsonString = getJsonString(scanner);
-            JsonParser parser = new JsonParser();
-            JsonObject jsonObject = parser.parse(jsonString).getAsJsonObject();
-
-            getLogger().log(Level.INFO, "Create controller...");
-            controller = new HeadSweeperController(jsonObject, this);
-            getLogger().log(Level.INFO, "Controller created.");
-        } catch (FileNotFoundException ex) {
-            getLogger().log(Level.SEVERE, "Couldn't read from sweeperGames.json", ex);
+        controller.addPendingClears(result.getPendingClears());
+        loaded = true;
+        controller.applyToLoadedChunks();
+        persister.setGeneration(result.getGeneration());
+        persister.flush();
+        startSync();
+
+        if (result.isMigrated()) {
+            persister.runAfterWrites(() -> {
+                File backupFile = new File(getDataFolder(), "sweeperGames.json.bak");
+                if (dataFile.exists() && jsonFile.renameTo(backupFile)) {
+                    getLogger().log(Level.INFO, "Games migrated, sweeperGames.json has been renamed to sweeperGames.json.bak");
+                }
+            });
         }
+        getLogger().log(Level.INFO, "Games loaded.");
     }
 
-    private String getJsonString(Scanner scanner) {
-        StringBuilder jsonStringBuilder = new StringBuilder();
-        while (scanner.hasNextLine()) {
-            jsonStringBuilder.append(scanner.nextLine());
+    /**
+     * Start sharing the boards with the other servers through the backend
+     * that has been registered with the ServicesManager, if syncing is
+     * enabled
+     */
+    private void startSync() {
+        if (!getConfig().getBoolean("sync.enabled", false)) {
+            return;
         }
-        String jsonString = jsonStringBuilder.toString();
-
-        if ("".equals(jsonString)) {
-            jsonString = "{}";
+        RegisteredServiceProvider<BoardSyncBackend> provider = getServer().getServicesManager().getRegistration(BoardSyncBackend.class);
+        if (provider == null) {
+            getLogger().log(Level.WARNING, "Board syncing is enabled, but no plugin has registered a board sync backend");
+            return;
         }
-        return jsonString;
+        boardSync.start(provider.getProvider());
+        getLogger().log(Level.INFO, "Sharing the boards as server {0}", boardSync.getServerId());
+    }
+
+    /**
+     * Get if the games have been loaded
+     *
+     * @return true if the games have been loaded, otherwise false
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Get the thread pool for work that doesn't have to be done on the main
+     * thread
+     *
+     * @return the worker thread pool
+     */
+    public ForkJoinPool getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Get an executor that runs tasks on the main thread
+     *
+     * @return the main thread executor
+     */
+    public Executor getMainThreadExecutor() {
+        return task -> Bukkit.getScheduler().runTask(this, task);
+    }
+
+    /**
+     * Initialize the heads in the background. The heads are read from the
+     * local cache if possible, otherwise they are looked up in the heads
+     * database and cached. The heads that are in use stay in use until the new
+     * heads are ready.
+     *
+     * @param refresh true to look the heads up in the heads database, even if
+     * they have been cached
+     * @return a future that completes on the main thread when the heads are
+     * ready, after which the render scheduler is started
+     */
+    public CompletableFuture<Void> initHeads(boolean refresh) {
+        HeadCache headCache = new HeadCache(new File(getDataFolder(), "heads.json"), getLogger());
+        CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
+            Map<String, Head> heads = refresh ? null : headCache.read();
+            if (heads == null || !heads.keySet().containsAll(HEAD_NAMES)) {
+                heads = searchHeads();
+                headCache.write(heads);
+            }
+            return heads;
+        }, workers).thenAcceptAsync(this::setHeads, getMainThreadExecutor());
+        headsReady = future;
+        future.thenRunAsync(() -> {
+            if (renderScheduler != null) {
+                renderScheduler.start();
+            }
+        }, getMainThreadExecutor());
+        future.whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                getLogger().log(Level.SEVERE, "Minesweeper heads have not been properly initialized. Run /headsweeper updateheads to try again", ex);
+            } else {
+                getLogger().log(Level.INFO, "Sweeperheads initialized");
+            }
+        });
+        return future;
     }
 
     /**
-     * Initialize the heads that will be used for the head sweeper game
+     * Tell a sender that the heads can't be placed yet
+     *
+     * @param sender the sender
      */
-    public void initHeads() {
+    public void sendHeadsNotReady(CommandSender sender) {
+        if (headsReady == null || headsReady.isCompletedExceptionally()) {
+            sender.sendMessage(pluginChatPrefix() + ChatColor.RED + "The plugin has not properly been initialized. Run '/headsweeper updateheads' to initialize the heads for this plugin");
+        } else {
+            sender.sendMessage(pluginChatPrefix() + ChatColor.GOLD + "The minesweeper heads are still being initialized. The board will be updated once they are ready.");
+        }
+    }
+
+    private Map<String, Head> searchHeads() {
         HeadSearcher headSearcher = HeadsPluginApi.getHeadsPluginServices().orElseThrow(IllegalStateException::new).headSearcher();
 
         // make sure that the heads are in the database
         headSearcher.getHeads("Minesweeper");
         headSearcher.getHeads("TNT");
 
-        UNKNOWN_HEAD = getHead("unknown tile", "5ec2960e-8233-3ca4-b235-7a9af34755fd", "30deb948-c6d0-48c1-9899-e61f9a8257c0", headSearcher);
-        FLAG_HEAD = getHead("flag tile", "96f10d25-92c6-3b82-a961-203e49b88162", "cce8d286-c327-4bdc-a2f4-8e6b75eed62a", headSearcher);
-        BOMB_HEAD = getHead("bomb tile", "a4341464-f2c9-3b3e-8941-3e6de5f105ea", "3d80d659-36cd-4aee-8540-8cdb548ede75", headSearcher);
+        Map<String, Head> heads = new HashMap<>();
+        heads.put("unknown", getHead("unknown tile", "5ec2960e-8233-3ca4-b235-7a9af34755fd", "30deb948-c6d0-48c1-9899-e61f9a8257c0", headSearcher));
+        heads.put("flag", getHead("flag tile", "96f10d25-92c6-3b82-a961-203e49b88162", "cce8d286-c327-4bdc-a2f4-8e6b75eed62a", headSearcher));
+        heads.put("bomb", getHead("bomb tile", "a4341464-f2c9-3b3e-8941-3e6de5f105ea", "3d80d659-36cd-4aee-8540-8cdb548ede75", headSearcher));
+        heads.put("0", getHead("0 tile", "d5a38870-020b-3063-9f46-148ba463db20", "9d756ab9-765c-41a5-8c8e-853203c5c274", headSearcher));
+        heads.put("1", getHead("1 tile", "1cb8b22b-6ff1-34c7-834f-d2601f00ceef", "9b9255a2-6f65-48ee-a877-2000505047bd", headSearcher));
+        heads.put("2", getHead("2 tile", "5c38d26d-19e6-3a3e-b553-be25ab855392", "30beeb33-cd7b-4b26-bbf6-24225741cf33", headSearcher));
+        heads.put("3", getHead("3 tile", "2ce77649-ad2c-3c5f-ab70-127669354c46", "98b890ff-fa7e-4fd0-a27b-99e6883a6219", headSearcher));
+        heads.put("4", getHead("4 tile", "c9e002f0-9d72-3856-ba33-d66d7870bfe3", "aa109b98-76c2-4336-b50e-cbce1bb8e45f", headSearcher));
+        heads.put("5", getHead("5 tile", "abe8f80a-0f82-32b3-b0f4-28113bf6a713", "50970266-12e0-4b36-aa2c-6093027fcdb3", headSearcher));
+        heads.put("6", getHead("6 tile", "233037d3-4937-38f2-bb4b-56c34a80f730", "a8a879cd-174e-40bd-9699-117c498e245f", headSearcher));
+        heads.put("7", getHead("7 tile", "c1ca5b99-c159-36f0-a29a-d488e6efc7e5", "9538924b-fa99-4f9b-8663-911a6c784501", headSearcher));
+        heads.put("8", getHead("8 tile", "f63b5c7b-0980-35ab-b386-b74985ef5b6a", "ef74d8b9-065c-4d04-ac75-c813ae48a845", headSearcher));
+        return heads;
+    }
+
+    private void setHeads(Map<String, Head> heads) {
+        setHeads(heads, HeadsPluginApi.getHeadsPluginServices().orElseThrow(IllegalStateException::new).headPlacer());
+    }
+
+    /**
+     * Start using the given heads
+     *
+     * @param heads the heads by name
+     * @param headPlacer the head placer that places the heads in the world
+     */
+    protected void setHeads(Map<String, Head> heads, HeadPlacer headPlacer) {
+        UNKNOWN_HEAD = heads.get("unknown");
+        FLAG_HEAD = heads.get("flag");
+        BOMB_HEAD = heads.get("bomb");
 
         NUMBER_HEADS = new HashMap<>();
-        NUMBER_HEADS.put(0, getHead("0 tile", "d5a38870-020b-3063-9f46-148ba463db20", "9d756ab9-765c-41a5-8c8e-853203c5c274", headSearcher));
-        NUMBER_HEADS.put(1, getHead("1 tile", "1cb8b22b-6ff1-34c7-834f-d2601f00ceef", "9b9255a2-6f65-48ee-a877-2000505047bd", headSearcher));
-        NUMBER_HEADS.put(2, getHead("2 tile", "5c38d26d-19e6-3a3e-b553-be25ab855392", "30beeb33-cd7b-4b26-bbf6-24225741cf33", headSearcher));
-        NUMBER_HEADS.put(3, getHead("3 tile", "2ce77649-ad2c-3c5f-ab70-127669354c46", "98b890ff-fa7e-4fd0-a27b-99e6883a6219", headSearcher));
-        NUMBER_HEADS.put(4, getHead("4 tile", "c9e002f0-9d72-3856-ba33-d66d7870bfe3", "aa109b98-76c2-4336-b50e-cbce1bb8e45f", headSearcher));
-        NUMBER_HEADS.put(5, getHead("5 tile", "abe8f80a-0f82-32b3-b0f4-28113bf6a713", "50970266-12e0-4b36-aa2c-6093027fcdb3", headSearcher));
-        NUMBER_HEADS.put(6, getHead("6 tile", "233037d3-4937-38f2-bb4b-56c34a80f730", "a8a879cd-174e-40bd-9699-117c498e245f", headSearcher));
-        NUMBER_HEADS.put(7, getHead("7 tile", "c1ca5b99-c159-36f0-a29a-d488e6efc7e5", "9538924b-fa99-4f9b-8663-911a6c784501", headSearcher));
-        NUMBER_HEADS.put(8, getHead("8 tile", "f63b5c7b-0980-35ab-b386-b74985ef5b6a", "ef74d8b9-065c-4d04-ac75-c813ae48a845", headSearcher));
+        for (int number = 0; number <= 8; number++) {
+            NUMBER_HEADS.put(number, heads.get(Integer.toString(number)));
+        }
 
+        TILE_HEADS = new TileHeads(UNKNOWN_HEAD, FLAG_HEAD, BOMB_HEAD, NUMBER_HEADS, headPlacer);
         init = true;
     }
 
@@ -263,10 +642,7 @@ public class HeadSweeper extends JavaPlugin {
 
         return headSearcher.getHead(UUID.fromString(primaryUuid))
                 .orElseGet(() -> headSearcher.getHead(UUID.fromString(secondaryUuid))
-                        .orElseThrow(() -> {
-                            init = false;
-                            return new IllegalStateException("Minesweeper heads have not been properly initialized: " + headName + " head not found!");
-                        })
+                        .orElseThrow(() -> new IllegalStateException("Minesweeper heads have not been properly initialized: " + headName + " head not found!"))
                 );
     }
 
@@ -25,18 +25,24 @@ package com.github.cc007.headsweeper.commands;
 
 import com.github.cc007.headsweeper.HeadSweeper;
 import com.github.cc007.headsweeper.controller.HeadSweeperGame;
-import com.github.cc007.headsweeper.events.BoardResetEvent;
+import com.github.cc007.headsweeper.metrics.Histogram;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import com.github.cc007.headsweeper.stats.PlayerStats;
+import com.github.cc007.headsweeper.stats.StatsTracker;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-import java.util.Date;
-import java.util.logging.Level;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
@@ -53,23 +59,29 @@ public class HeadSweeperCommand implements CommandExecutor {
     public boolean onCommand(CommandSender sender, Command command, String commandLabel, String[] args) {
 
         if (args.length == 0) {
-            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Use: /headsweeper (updateheads | reset <boardnr> | create (<worldname> <xloc> <yloc> <zloc>|here) <width in x> <depth in z> <bombcount> | delete <boardnr>)");
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Use: /headsweeper (updateheads | reset <boardnr> | resetall [worldname] | autoreset <boardnr> [<seconds>|default] | repair <boardnr> | create (<worldname> <xloc> <yloc> <zloc>|here) <width in x> <depth in z> <bombcount> [mcsweeper|packed] | arena (<worldname> <xloc> <yloc> <zloc>|here) <columns> <rows> <spacing> <width in x> <depth in z> <bombcount> [mcsweeper|packed] | delete <boardnr> | stats | top [<width>x<depth>/<bombcount>] [count] | player [playername])");
             return false;
         }
 
+        if (!args[0].equalsIgnoreCase("updateheads") && !plugin.isLoaded()) {
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The minesweeper games are still being loaded. Try again in a moment.");
+            return true;
+        }
+
         switch (args[0].toLowerCase()) {
             case "updateheads":
                 if (!sender.hasPermission("sweeper.update")) {
                     return false;
                 }
 
-                plugin.initHeads();
-
-                if (plugin.isInit()) {
-                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Minesweeper heads are initialized.");
-                } else {
-                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "Minesweeper heads have not been properly initialized.");
-                }
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Updating the minesweeper heads...");
+                plugin.initHeads(true).whenCompleteAsync((ignored, ex) -> {
+                    if (ex == null) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Minesweeper heads are initialized.");
+                    } else {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "Minesweeper heads have not been properly initialized.");
+                    }
+                }, plugin.getMainThreadExecutor());
                 return true;
 
             case "reset":
@@ -89,19 +101,120 @@ public class HeadSweeperCommand implements CommandExecutor {
                     return false;
                 }
 
-                game.getGame().resetField();
-                plugin.saveGames();
-                if (plugin.isInit()) {
-                    game.placeHeads();
-                    Player player = null;
-                    if (sender instanceof Player) {
-                        player = (Player) sender;
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Resetting the board...");
+                plugin.getController().resetGame(game, sender).whenComplete((resetCount, ex) -> {
+                    if (ex != null) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The board couldn't be reset.");
+                    } else if (resetCount > 0) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The board has been reset.");
+                    }
+                });
+                if (!plugin.isInit()) {
+                    plugin.sendHeadsNotReady(sender);
+                }
+
+                return true;
+
+            case "resetall":
+                if (!sender.hasPermission("sweeper.reset")) {
+                    return false;
+                }
+
+                World resetWorld = null;
+                if (args.length > 1) {
+                    resetWorld = Bukkit.getWorld(args[1]);
+                    if (resetWorld == null) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There is no world with that name!");
+                        return false;
+                    }
+                }
+
+                List<HeadSweeperGame> resetGames = new ArrayList<>();
+                for (HeadSweeperGame resetGame : plugin.getController().getSweeperGames()) {
+                    if (resetWorld == null || resetWorld.equals(resetGame.getWorld())) {
+                        resetGames.add(resetGame);
                     }
-                    Bukkit.getServer().getPluginManager().callEvent(new BoardResetEvent(player, Integer.parseInt(args[1]), new Date()));
-                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The board has been reset.");
+                }
+
+                if (resetGames.isEmpty()) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There are no games to reset!");
+                    return true;
+                }
+
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Resetting " + resetGames.size() + " boards...");
+                plugin.getController().resetGames(resetGames, sender).whenComplete((resetCount, ex) -> {
+                    if (ex == null) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + resetCount + " boards have been reset.");
+                    } else {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The boards couldn't be reset.");
+                    }
+                });
+                if (!plugin.isInit()) {
+                    plugin.sendHeadsNotReady(sender);
+                }
+
+                return true;
+
+            case "autoreset":
+                if (!sender.hasPermission("sweeper.reset")) {
+                    return false;
+                }
+
+                if (args.length < 2 || args.length > 3 || !isInteger(args[1])) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "You didn't specify which minesweeper board to change!");
+                    return false;
+                }
+
+                HeadSweeperGame autoResetGame = plugin.getController().getGame(Integer.parseInt(args[1]));
+
+                if (autoResetGame == null) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There is no game with that game number!" + ChatColor.GOLD + "Tip: rightclick a game to get its number.");
+                    return false;
+                }
+
+                if (args.length == 3) {
+                    if (args[2].equalsIgnoreCase("default")) {
+                        autoResetGame.setAutoResetDelay(-1);
+                    } else if (isInteger(args[2]) && Integer.parseInt(args[2]) >= 0) {
+                        autoResetGame.setAutoResetDelay(Integer.parseInt(args[2]));
+                    } else {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The delay has to be a number of seconds or default!");
+                        return false;
+                    }
+                    plugin.getAutoResetScheduler().gameEnded(autoResetGame);
+                    plugin.saveGames();
+                }
+
+                int autoResetDelay = plugin.getAutoResetScheduler().getDelay(autoResetGame);
+                if (autoResetDelay > 0) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The board is reset " + autoResetDelay + " seconds after it has been won or lost.");
                 } else {
-                    plugin.getLogger().log(Level.SEVERE, "The plugin has not properly been initialized. Run /headsweeper updateheads to initialize the heads for this plugin");
-                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The plugin has not properly been initialized. Run '/headsweeper updateheads' to initialize the heads for this plugin");
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The board isn't reset automatically.");
+                }
+
+                return true;
+
+            case "repair":
+                if (!sender.hasPermission("sweeper.reset")) {
+                    return false;
+                }
+
+                if (args.length < 2 || !isInteger(args[1])) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + "You didn't specify which minesweeper board to repair!");
+                    return false;
+                }
+
+                HeadSweeperGame repairGame = plugin.getController().getGame(Integer.parseInt(args[1]));
+
+                if (repairGame == null) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There is no game with that game number!" + ChatColor.GOLD + "Tip: rightclick a game to get its number.");
+                    return false;
+                }
+
+                plugin.getRenderScheduler().redraw(repairGame, sender, null);
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The board will be redrawn.");
+                if (!plugin.isInit()) {
+                    plugin.sendHeadsNotReady(sender);
                 }
 
                 return true;
@@ -119,10 +232,19 @@ public class HeadSweeperCommand implements CommandExecutor {
                 int width,
                         height,
                         bombCount;
+                SweeperEngine engine = plugin.getDefaultEngine();
+                int engineArg = args[1].equalsIgnoreCase("here") ? 5 : 8;
+                if (args.length == engineArg + 1) {
+                    engine = SweeperEngine.fromName(args[engineArg]);
+                    if (engine == null) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "Unknown engine! Use mcsweeper or packed.");
+                        return false;
+                    }
+                }
 
                 if (args[1].equalsIgnoreCase("here")) {
 
-                    if (args.length != 5 || !isInteger(args[2]) || !isInteger(args[3]) || !isInteger(args[4]) || !(sender instanceof Player)) {
+                    if ((args.length != 5 && args.length != 6) || !isInteger(args[2]) || !isInteger(args[3]) || !isInteger(args[4]) || !(sender instanceof Player)) {
                         return false;
                     }
 
@@ -133,7 +255,7 @@ public class HeadSweeperCommand implements CommandExecutor {
                     createLocation = ((Player) sender).getLocation();
                 } else {
 
-                    if (args.length != 8 || !isInteger(args[2]) || !isInteger(args[3]) || !isInteger(args[4]) || !isInteger(args[5]) || !isInteger(args[6]) || !isInteger(args[7]) || Bukkit.getWorld(args[1]) == null) {
+                    if ((args.length != 8 && args.length != 9) || !isInteger(args[2]) || !isInteger(args[3]) || !isInteger(args[4]) || !isInteger(args[5]) || !isInteger(args[6]) || !isInteger(args[7]) || Bukkit.getWorld(args[1]) == null) {
                         return false;
                     }
 
@@ -144,8 +266,119 @@ public class HeadSweeperCommand implements CommandExecutor {
                     createLocation = new Location(Bukkit.getWorld(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
                 }
 
-                plugin.getController().createNewField(createLocation, width, height, bombCount, sender);
+                plugin.getController().createNewField(createLocation, width, height, bombCount, engine, sender);
+
+                return true;
+            case "arena":
+                if (!sender.hasPermission("sweeper.manage")) {
+                    return false;
+                }
+
+                if (args.length < 8) {
+                    return false;
+                }
+
+                Location arenaLocation;
+                int arenaArg;
+                if (args[1].equalsIgnoreCase("here")) {
+                    if (!(sender instanceof Player)) {
+                        return false;
+                    }
+                    arenaLocation = ((Player) sender).getLocation();
+                    arenaArg = 2;
+                } else {
+                    if (args.length < 11 || !isInteger(args[2]) || !isInteger(args[3]) || !isInteger(args[4]) || Bukkit.getWorld(args[1]) == null) {
+                        return false;
+                    }
+                    arenaLocation = new Location(Bukkit.getWorld(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+                    arenaArg = 5;
+                }
+
+                if (args.length != arenaArg + 6 && args.length != arenaArg + 7) {
+                    return false;
+                }
+                for (int i = arenaArg; i < arenaArg + 6; i++) {
+                    if (!isInteger(args[i])) {
+                        return false;
+                    }
+                }
+
+                int columns = Integer.parseInt(args[arenaArg]);
+                int rows = Integer.parseInt(args[arenaArg + 1]);
+                int spacing = Integer.parseInt(args[arenaArg + 2]);
+                int arenaWidth = Integer.parseInt(args[arenaArg + 3]);
+                int arenaHeight = Integer.parseInt(args[arenaArg + 4]);
+                int arenaBombCount = Integer.parseInt(args[arenaArg + 5]);
+                SweeperEngine arenaEngine = plugin.getDefaultEngine();
+                if (args.length == arenaArg + 7) {
+                    arenaEngine = SweeperEngine.fromName(args[arenaArg + 6]);
+                    if (arenaEngine == null) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "Unknown engine! Use mcsweeper or packed.");
+                        return false;
+                    }
+                }
+
+                plugin.getController().createArena(arenaLocation, columns, rows, spacing, arenaWidth, arenaHeight, arenaBombCount, arenaEngine, sender);
 
+                return true;
+            case "stats":
+                if (!sender.hasPermission("sweeper.stats")) {
+                    return false;
+                }
+
+                sendStats(sender, plugin.getMetricsRegistry());
+                return true;
+            case "top":
+                if (!sender.hasPermission("sweeper.leaderboard")) {
+                    return false;
+                }
+
+                StatsTracker topTracker = plugin.getStatsTracker();
+                if (topTracker == null || !topTracker.isLoaded()) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The statistics are not available.");
+                    return true;
+                }
+
+                int topArg = 1;
+                String boardType = null;
+                if (args.length > topArg && !isInteger(args[topArg])) {
+                    boardType = args[topArg++].toLowerCase();
+                }
+                int topCount = 10;
+                if (args.length > topArg) {
+                    if (!isInteger(args[topArg])) {
+                        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The number of players has to be a number!");
+                        return false;
+                    }
+                    topCount = Math.max(1, Math.min(50, Integer.parseInt(args[topArg])));
+                }
+                sendTop(sender, topTracker, boardType, topCount);
+                return true;
+            case "player":
+                if (!sender.hasPermission("sweeper.leaderboard")) {
+                    return false;
+                }
+
+                StatsTracker playerTracker = plugin.getStatsTracker();
+                if (playerTracker == null || !playerTracker.isLoaded()) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The statistics are not available.");
+                    return true;
+                }
+
+                UUID statsPlayer;
+                if (args.length > 1) {
+                    statsPlayer = playerTracker.findPlayer(args[1]);
+                } else if (sender instanceof Player) {
+                    statsPlayer = ((Player) sender).getUniqueId();
+                } else {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "You didn't specify which player's statistics to show!");
+                    return false;
+                }
+                if (statsPlayer == null || playerTracker.getTotal(statsPlayer) == null) {
+                    sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "That player hasn't finished a game yet.");
+                    return true;
+                }
+                sendPlayerStats(sender, playerTracker, statsPlayer);
                 return true;
             case "delete":
 
@@ -158,18 +391,104 @@ public class HeadSweeperCommand implements CommandExecutor {
                     return false;
                 }
 
-                if (!plugin.getController().removeGame(Integer.parseInt(args[1]))) {
+                if (!plugin.getController().removeGame(Integer.parseInt(args[1]), sender)) {
                     sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There is no game with that game number!" + ChatColor.GOLD + "Tip: rightclick a game to get its number.");
                 } else {
                     sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The board has been deleted.");
                 }
                 return true;
             default:
-                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "Unknown command. Use: /headsweeper (updateheads | reset <boardnr> | create (<worldname> <xloc> <yloc> <zloc>|here) <width in x> <depth in z> <bombcount> | delete <boardnr>)");
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "Unknown command. Use: /headsweeper (updateheads | reset <boardnr> | resetall [worldname] | autoreset <boardnr> [<seconds>|default] | repair <boardnr> | create (<worldname> <xloc> <yloc> <zloc>|here) <width in x> <depth in z> <bombcount> [mcsweeper|packed] | arena (<worldname> <xloc> <yloc> <zloc>|here) <columns> <rows> <spacing> <width in x> <depth in z> <bombcount> [mcsweeper|packed] | delete <boardnr> | stats | top [<width>x<depth>/<bombcount>] [count] | player [playername])");
                 return false;
         }
     }
 
+    private void sendStats(CommandSender sender, MetricsRegistry metrics) {
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Boards: " + ChatColor.WHITE + metrics.getGauge(MetricsRegistry.BOARDS)
+                + ChatColor.GOLD + ", tiles: " + ChatColor.WHITE + metrics.getGauge(MetricsRegistry.TILES));
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Clicks: " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.CLICK_SWEEPS) + " sweeps"
+                + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.CLICK_FLAGS) + " flags"
+                + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.CLICK_THROTTLED) + " throttled");
+        sendTimes(sender, "Click time", metrics.histogram(MetricsRegistry.CLICK_TIME));
+        sendTimes(sender, "Update time", metrics.histogram(MetricsRegistry.UPDATE_TIME));
+        sendTimes(sender, "Render tick time", metrics.histogram(MetricsRegistry.RENDER_TICK_TIME));
+        Histogram blocksPerRedraw = metrics.histogram(MetricsRegistry.RENDER_BLOCKS_PER_REDRAW);
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Rendered: " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.RENDER_BLOCKS) + " blocks"
+                + ChatColor.GOLD + ", per redraw mean: " + ChatColor.WHITE + Math.round(blocksPerRedraw.getMean())
+                + ChatColor.GOLD + ", p99: " + ChatColor.WHITE + blocksPerRedraw.getPercentile(99));
+        sendTimes(sender, "Save snapshot time", metrics.histogram(MetricsRegistry.SAVE_SNAPSHOT_TIME));
+        sendTimes(sender, "Save write time", metrics.histogram(MetricsRegistry.SAVE_WRITE_TIME));
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Saved: " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.SAVE_BYTES) + " bytes"
+                + ChatColor.GOLD + ", journaled: " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.JOURNAL_BYTES) + " bytes");
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Queues: " + ChatColor.WHITE + metrics.getGauge(MetricsRegistry.RENDER_QUEUE) + " render jobs"
+                + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getGauge(MetricsRegistry.UPDATE_QUEUE) + " updates"
+                + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getGauge(MetricsRegistry.AUTO_RESET_QUEUE) + " auto resets"
+                + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getGauge(MetricsRegistry.JOURNAL_QUEUE) + " journal bytes"
+                + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getGauge(MetricsRegistry.SYNC_QUEUE) + " sync deltas");
+        if (plugin.getBoardSync() != null && plugin.getBoardSync().isStarted()) {
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Sync: " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.SYNC_PUBLISHED) + " published"
+                    + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.SYNC_APPLIED) + " applied"
+                    + ChatColor.GOLD + ", " + ChatColor.WHITE + metrics.getCount(MetricsRegistry.SYNC_CONFLICTS) + " conflicts");
+        }
+    }
+
+    private void sendTop(CommandSender sender, StatsTracker tracker, String boardType, int count) {
+        if (boardType == null) {
+            List<PlayerStats> top = tracker.getMostWins(count);
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Most wins:");
+            for (int i = 0; i < top.size(); i++) {
+                PlayerStats stats = top.get(i);
+                sender.sendMessage(ChatColor.GOLD + "" + (i + 1) + ". " + ChatColor.WHITE + stats.getName()
+                        + ChatColor.GOLD + ": " + ChatColor.WHITE + stats.getWins() + " wins, " + stats.getLosses() + " losses");
+            }
+            List<String> boardTypes = tracker.getBoardTypes();
+            if (!boardTypes.isEmpty()) {
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Board types: " + ChatColor.WHITE + String.join(", ", boardTypes));
+            }
+            return;
+        }
+        List<PlayerStats> top = tracker.getFastest(boardType, count);
+        if (top.isEmpty()) {
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "Nobody has cleared a " + boardType + " board yet.");
+            return;
+        }
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Fastest on " + boardType + ":");
+        for (int i = 0; i < top.size(); i++) {
+            PlayerStats stats = top.get(i);
+            sender.sendMessage(ChatColor.GOLD + "" + (i + 1) + ". " + ChatColor.WHITE + stats.getName()
+                    + ChatColor.GOLD + ": " + ChatColor.WHITE + clearTime(stats.getBestTime()));
+        }
+    }
+
+    private void sendPlayerStats(CommandSender sender, StatsTracker tracker, UUID player) {
+        PlayerStats total = tracker.getTotal(player);
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Statistics of " + ChatColor.WHITE + total.getName()
+                + ChatColor.GOLD + ": " + ChatColor.WHITE + total.getWins() + " wins, " + total.getLosses() + " losses"
+                + (tracker.getMostWinsRank(player) > 0 ? ChatColor.GOLD + ", rank " + ChatColor.WHITE + tracker.getMostWinsRank(player) : ""));
+        for (PlayerStats stats : tracker.getStats(player)) {
+            int rank = tracker.getFastestRank(stats.getBoardType(), player);
+            sender.sendMessage(ChatColor.GOLD + stats.getBoardType() + ": " + ChatColor.WHITE + stats.getWins() + " wins, " + stats.getLosses() + " losses"
+                    + (stats.getBestTime() >= 0 ? ChatColor.GOLD + ", best " + ChatColor.WHITE + clearTime(stats.getBestTime()) : "")
+                    + (rank > 0 ? ChatColor.GOLD + ", rank " + ChatColor.WHITE + rank : ""));
+        }
+    }
+
+    private static String clearTime(long millis) {
+        return String.format("%d:%02d.%03d", millis / 60000, millis / 1000 % 60, millis % 1000);
+    }
+
+    private void sendTimes(CommandSender sender, String name, Histogram times) {
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + name + " (" + times.getCount() + "): "
+                + ChatColor.WHITE + "mean " + millis(Math.round(times.getMean()))
+                + ", p50 " + millis(times.getPercentile(50))
+                + ", p99 " + millis(times.getPercentile(99))
+                + ", max " + millis(times.getMax()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
     public static boolean isInteger(String str) {
         if (str == null) {
             return false;
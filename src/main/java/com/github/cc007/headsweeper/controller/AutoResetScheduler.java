@@ -0,0 +1,216 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsweeper.HeadSweeper;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resets boards automatically some time after they have been won or lost.
+ * The pending resets are kept in a hashed timer wheel that is advanced by a
+ * single repeating task, so that every tick only the resets in one slot of
+ * the wheel are looked at. Resets that come due are queued and at most a
+ * configured number of boards is reset per tick.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class AutoResetScheduler implements Runnable {
+
+    private static final int WHEEL_SIZE = 1024;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final HeadSweeper plugin;
+    private final int defaultDelay;
+    private final int maxResetsPerTick;
+    private final Timeout[] wheel;
+    private final Map<HeadSweeperGame, Timeout> timeouts;
+    private final Deque<Timeout> due;
+    private long tick;
+    private BukkitTask task;
+
+    /**
+     * A pending reset. Every slot of the wheel is a doubly linked list of
+     * pending resets, so that a reset can be cancelled in constant time.
+     */
+    private static final class Timeout {
+
+        private final HeadSweeperGame game;
+        private final long dueTick;
+        private Timeout previous;
+        private Timeout next;
+        private boolean cancelled;
+
+        private Timeout(HeadSweeperGame game, long dueTick) {
+            this.game = game;
+            this.dueTick = dueTick;
+        }
+    }
+
+    /**
+     * @param plugin the plugin
+     * @param defaultDelay the number of seconds after which boards that use
+     * the default delay are reset, or 0 to not reset them
+     * @param maxResetsPerTick the maximum number of boards that are reset per
+     * tick
+     */
+    public AutoResetScheduler(HeadSweeper plugin, int defaultDelay, int maxResetsPerTick) {
+        this.plugin = plugin;
+        this.defaultDelay = Math.max(0, defaultDelay);
+        this.maxResetsPerTick = Math.max(1, maxResetsPerTick);
+        this.wheel = new Timeout[WHEEL_SIZE];
+        this.timeouts = new IdentityHashMap<>();
+        this.due = new ArrayDeque<>();
+    }
+
+    public void start() {
+        if (task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1, 1);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Get the number of seconds after which a game is reset once it has been
+     * won or lost
+     *
+     * @param game the game
+     * @return the delay in seconds, or 0 if the game isn't reset
+     * automatically
+     */
+    public int getDelay(HeadSweeperGame game) {
+        return game.getAutoResetDelay() < 0 ? defaultDelay : game.getAutoResetDelay();
+    }
+
+    /**
+     * Schedule the reset of a game if it has been won or lost and it is
+     * reset automatically. An earlier scheduled reset of the game is
+     * replaced.
+     *
+     * @param game the game
+     */
+    public void gameEnded(HeadSweeperGame game) {
+        cancel(game);
+        int delay = getDelay(game);
+        if (delay <= 0 || !(game.getGame().hasWon() || game.getGame().hasLost())) {
+            return;
+        }
+        Timeout timeout = new Timeout(game, tick + delay * 20L);
+        int slot = (int) (timeout.dueTick & WHEEL_MASK);
+        timeout.next = wheel[slot];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        wheel[slot] = timeout;
+        timeouts.put(game, timeout);
+    }
+
+    /**
+     * Cancel the scheduled reset of a game
+     *
+     * @param game the game
+     */
+    public void cancel(HeadSweeperGame game) {
+        Timeout timeout = timeouts.remove(game);
+        if (timeout == null) {
+            return;
+        }
+        timeout.cancelled = true;
+        unlink(timeout);
+    }
+
+    /**
+     * Get the number of games that are waiting to be reset
+     *
+     * @return the number of pending resets
+     */
+    public int getPendingCount() {
+        return timeouts.size();
+    }
+
+    @Override
+    public void run() {
+        tick++;
+        int slot = (int) (tick & WHEEL_MASK);
+        Timeout timeout = wheel[slot];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.dueTick <= tick) {
+                unlink(timeout);
+                due.add(timeout);
+            }
+            timeout = next;
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        List<HeadSweeperGame> games = new ArrayList<>(Math.min(due.size(), maxResetsPerTick));
+        while (games.size() < maxResetsPerTick && !due.isEmpty()) {
+            timeout = due.poll();
+            HeadSweeperGame game = timeout.game;
+            if (timeout.cancelled || plugin.getController().getGame(game.getId()) != game) {
+                continue;
+            }
+            timeouts.remove(game);
+            if (game.getGame().hasWon() || game.getGame().hasLost()) {
+                games.add(game);
+            }
+        }
+        if (!games.isEmpty()) {
+            plugin.getController().resetGames(games, null);
+        }
+    }
+
+    /**
+     * Remove a pending reset from its slot. The reset stays in the map of
+     * timeouts, so that it can still be cancelled after it came due.
+     */
+    private void unlink(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            int slot = (int) (timeout.dueTick & WHEEL_MASK);
+            if (wheel[slot] == timeout) {
+                wheel[slot] = timeout.next;
+            }
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+    }
+}
@@ -0,0 +1,212 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsweeper.util.LongObjectHashMap;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Spatial index of the minesweeper games. For every world it maps the
+ * coordinates of a chunk to the games that overlap that chunk.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BoardIndex {
+
+    private final Map<UUID, LongObjectHashMap<List<HeadSweeperGame>>> worlds;
+    private int version;
+
+    public BoardIndex() {
+        worlds = new HashMap<>();
+    }
+
+    /**
+     * Get the key of a chunk
+     *
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkZ the z coordinate of the chunk
+     * @return the key of the chunk
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the version of this index, which changes every time a game is added
+     * or removed
+     *
+     * @return the version of this index
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public void add(HeadSweeperGame game) {
+        if (game.getWorld() == null) {
+            return;
+        }
+        version++;
+        addToChunks(game);
+    }
+
+    /**
+     * Add multiple games at once. The version of the index only changes once.
+     *
+     * @param games the games to add
+     */
+    public void addAll(Collection<HeadSweeperGame> games) {
+        version++;
+        for (HeadSweeperGame game : games) {
+            if (game.getWorld() != null) {
+                addToChunks(game);
+            }
+        }
+    }
+
+    private void addToChunks(HeadSweeperGame game) {
+        LongObjectHashMap<List<HeadSweeperGame>> chunks = worlds.computeIfAbsent(game.getWorld().getUID(), uid -> new LongObjectHashMap<>());
+        int width = game.getGame().getField().getWidth();
+        int height = game.getGame().getField().getHeight();
+        for (int chunkX = game.getX() >> 4; chunkX <= (game.getX() + width - 1) >> 4; chunkX++) {
+            for (int chunkZ = game.getZ() >> 4; chunkZ <= (game.getZ() + height - 1) >> 4; chunkZ++) {
+                long key = chunkKey(chunkX, chunkZ);
+                List<HeadSweeperGame> games = chunks.get(key);
+                if (games == null) {
+                    games = new ArrayList<>(1);
+                    chunks.put(key, games);
+                }
+                games.add(game);
+            }
+        }
+    }
+
+    public void remove(HeadSweeperGame game) {
+        if (game.getWorld() == null) {
+            return;
+        }
+        version++;
+        LongObjectHashMap<List<HeadSweeperGame>> chunks = worlds.get(game.getWorld().getUID());
+        if (chunks == null) {
+            return;
+        }
+        int width = game.getGame().getField().getWidth();
+        int height = game.getGame().getField().getHeight();
+        for (int chunkX = game.getX() >> 4; chunkX <= (game.getX() + width - 1) >> 4; chunkX++) {
+            for (int chunkZ = game.getZ() >> 4; chunkZ <= (game.getZ() + height - 1) >> 4; chunkZ++) {
+                long key = chunkKey(chunkX, chunkZ);
+                List<HeadSweeperGame> games = chunks.get(key);
+                if (games != null && games.remove(game) && games.isEmpty()) {
+                    chunks.remove(key);
+                }
+            }
+        }
+        if (chunks.isEmpty()) {
+            worlds.remove(game.getWorld().getUID());
+        }
+    }
+
+    /**
+     * Get the games that overlap a chunk
+     *
+     * @param world the world of the chunk
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkZ the z coordinate of the chunk
+     * @return the games that overlap the chunk
+     */
+    public List<HeadSweeperGame> getGames(World world, int chunkX, int chunkZ) {
+        LongObjectHashMap<List<HeadSweeperGame>> chunks = worlds.get(world.getUID());
+        if (chunks == null) {
+            return Collections.emptyList();
+        }
+        List<HeadSweeperGame> games = chunks.get(chunkKey(chunkX, chunkZ));
+        return games == null ? Collections.<HeadSweeperGame>emptyList() : games;
+    }
+
+    /**
+     * Get the game that has a tile at the given location
+     *
+     * @param world the world
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the game, or null if there is no game at the given location
+     */
+    public HeadSweeperGame getGameAt(World world, int x, int y, int z) {
+        for (HeadSweeperGame game : getGames(world, x >> 4, z >> 4)) {
+            if (game.isInField(world, x, y, z)) {
+                return game;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the game that has a tile directly above the given location
+     *
+     * @param world the world
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the game, or null if there is no game above the given location
+     */
+    public HeadSweeperGame getGameAbove(World world, int x, int y, int z) {
+        for (HeadSweeperGame game : getGames(world, x >> 4, z >> 4)) {
+            if (game.isUnderField(world, x, y, z)) {
+                return game;
+            }
+        }
+        return null;
+    }
+
+    public boolean isIntersecting(World world, int x, int y, int z, int width, int height) {
+        LongObjectHashMap<List<HeadSweeperGame>> chunks = worlds.get(world.getUID());
+        if (chunks == null) {
+            return false;
+        }
+        // games that touch the edge of the area count as intersecting as well
+        for (int chunkX = (x - 1) >> 4; chunkX <= (x + width) >> 4; chunkX++) {
+            for (int chunkZ = (z - 1) >> 4; chunkZ <= (z + height) >> 4; chunkZ++) {
+                List<HeadSweeperGame> games = chunks.get(chunkKey(chunkX, chunkZ));
+                if (games == null) {
+                    continue;
+                }
+                for (HeadSweeperGame game : games) {
+                    if (game.isIntersecting(world, x, y, z, width, height)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
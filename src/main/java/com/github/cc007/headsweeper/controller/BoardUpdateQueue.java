@@ -0,0 +1,198 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.metrics.Histogram;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the tiles that have changed because of clicks and places their
+ * heads once per tick, no matter how many clicks arrived for a board. Only
+ * the changed tiles are placed. If the sweeper engine doesn't tell which
+ * tiles have changed, the board is handed to the {@link RenderScheduler}
+ * instead, so that comparing all of its tiles stays within the render budget.
+ * A render can be delayed by a few ticks, which is needed for the skull
+ * workaround of sweeps.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BoardUpdateQueue implements Runnable {
+
+    private final HeadSweeper plugin;
+    private final Map<HeadSweeperGame, PendingRender> pendingRenders;
+    private final Histogram updateTime;
+    private final LongAdder renderedBlocks;
+    private final Histogram blocksPerRedraw;
+    private long tick;
+    private BukkitTask task;
+
+    public BoardUpdateQueue(HeadSweeper plugin) {
+        this.plugin = plugin;
+        this.pendingRenders = new IdentityHashMap<>();
+        this.updateTime = plugin.getMetricsRegistry().histogram(MetricsRegistry.UPDATE_TIME);
+        this.renderedBlocks = plugin.getMetricsRegistry().counter(MetricsRegistry.RENDER_BLOCKS);
+        this.blocksPerRedraw = plugin.getMetricsRegistry().histogram(MetricsRegistry.RENDER_BLOCKS_PER_REDRAW);
+    }
+
+    /**
+     * The tiles of a board that are waiting to be placed
+     */
+    private static final class PendingRender {
+
+        private long due;
+        private int[] tiles;
+        private int tileCount;
+        private boolean allTiles;
+
+        private PendingRender(long due) {
+            this.due = due;
+            this.tiles = new int[8];
+        }
+
+        private void add(int[] changedTiles, int maxTiles) {
+            if (allTiles) {
+                return;
+            }
+            if (changedTiles == null || tileCount + changedTiles.length > maxTiles) {
+                allTiles = true;
+                tiles = null;
+                return;
+            }
+            if (tileCount + changedTiles.length > tiles.length) {
+                tiles = Arrays.copyOf(tiles, Math.min(maxTiles, Math.max(tiles.length * 2, tileCount + changedTiles.length)));
+            }
+            System.arraycopy(changedTiles, 0, tiles, tileCount, changedTiles.length);
+            tileCount += changedTiles.length;
+        }
+    }
+
+    /**
+     * Get the number of boards that are waiting to be rendered
+     *
+     * @return the number of boards
+     */
+    public int size() {
+        return pendingRenders.size();
+    }
+
+    /**
+     * Start flushing the queue every tick
+     */
+    public void start() {
+        if (task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1, 1);
+        }
+    }
+
+    /**
+     * Stop flushing the queue. Boards that haven't been rendered yet keep
+     * their changed tiles marked, so they are rendered after a restart.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        pendingRenders.clear();
+    }
+
+    /**
+     * Queue all tiles of a board to be rendered
+     *
+     * @param game the board
+     * @param delayTicks the number of ticks to wait after the current tick
+     * @see #queueRender(HeadSweeperGame, int, int[])
+     */
+    public void queueRender(HeadSweeperGame game, int delayTicks) {
+        queueRender(game, delayTicks, null);
+    }
+
+    /**
+     * Queue tiles of a board to be rendered. If the board is queued already,
+     * the tiles are added to the queued tiles and they are all rendered
+     * once, at the earliest of the requested ticks, so a steady stream of
+     * clicks can't keep postponing the render.
+     *
+     * @param game the board
+     * @param delayTicks the number of ticks to wait after the current tick
+     * @param tiles the indices (y * width + x) of the tiles that have
+     * changed, or null if any tile of the board may have changed
+     */
+    public void queueRender(HeadSweeperGame game, int delayTicks, int[] tiles) {
+        long due = tick + delayTicks;
+        PendingRender pending = pendingRenders.get(game);
+        if (pending == null) {
+            pending = new PendingRender(due);
+            pendingRenders.put(game, pending);
+        } else if (pending.due > due) {
+            pending.due = due;
+        }
+        pending.add(tiles, game.getTileCount());
+    }
+
+    @Override
+    public void run() {
+        tick++;
+        if (pendingRenders.isEmpty()) {
+            return;
+        }
+        for (Iterator<Map.Entry<HeadSweeperGame, PendingRender>> it = pendingRenders.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<HeadSweeperGame, PendingRender> entry = it.next();
+            PendingRender pending = entry.getValue();
+            if (pending.due > tick) {
+                continue;
+            }
+            it.remove();
+            HeadSweeperGame game = entry.getKey();
+            if (plugin.getController().getGame(game.getId()) != game) {
+                continue;
+            }
+            if (!plugin.isInit() || pending.allTiles) {
+                plugin.getRenderScheduler().render(game, null, null);
+                continue;
+            }
+            long start = System.nanoTime();
+            int width = game.getGame().getField().getWidth();
+            int tileCount = game.getTileCount();
+            int placed = 0;
+            for (int i = 0; i < pending.tileCount; i++) {
+                int tile = pending.tiles[i];
+                if (tile < tileCount && game.placeHead(tile % width, tile / width)) {
+                    placed++;
+                }
+            }
+            updateTime.recordSince(start);
+            renderedBlocks.add(placed);
+            blocksPerRedraw.record(placed);
+        }
+    }
+}
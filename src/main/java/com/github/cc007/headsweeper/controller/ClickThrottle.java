@@ -0,0 +1,156 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsweeper.util.IntObjectHashMap;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Limits how often a player can sweep or flag tiles on a board. Every player
+ * has a token bucket per board and per action: a click takes a token and the
+ * tokens are refilled at a fixed rate, up to a maximum burst. Buckets that
+ * have been refilled completely are dropped, because they behave the same as
+ * new buckets.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class ClickThrottle {
+
+    /**
+     * The actions that are throttled
+     */
+    public enum Action {
+        SWEEP,
+        FLAG
+    }
+
+    private static final int ACTION_COUNT = Action.values().length;
+
+    private final double[] tokensPerNano;
+    private final double[] burst;
+    private final Map<UUID, IntObjectHashMap<Buckets>> players;
+
+    private static final class Buckets {
+
+        private final double[] tokens = new double[ACTION_COUNT];
+        private final long[] refilled = new long[ACTION_COUNT];
+    }
+
+    /**
+     * Create a click throttle. A rate of 0 or less disables the throttle for
+     * that action.
+     *
+     * @param sweepRate the number of sweeps per second
+     * @param sweepBurst the number of sweeps that can be done at once
+     * @param flagRate the number of flags per second
+     * @param flagBurst the number of flags that can be done at once
+     */
+    public ClickThrottle(double sweepRate, double sweepBurst, double flagRate, double flagBurst) {
+        this.tokensPerNano = new double[ACTION_COUNT];
+        this.burst = new double[ACTION_COUNT];
+        tokensPerNano[Action.SWEEP.ordinal()] = sweepRate / 1e9;
+        burst[Action.SWEEP.ordinal()] = Math.max(1, sweepBurst);
+        tokensPerNano[Action.FLAG.ordinal()] = flagRate / 1e9;
+        burst[Action.FLAG.ordinal()] = Math.max(1, flagBurst);
+        this.players = new HashMap<>();
+    }
+
+    /**
+     * Take a token for an action of a player on a board
+     *
+     * @param player the player
+     * @param board the game number of the board
+     * @param action the action
+     * @return true if the player may do the action, false if it has to be
+     * rejected
+     */
+    public boolean tryAcquire(Player player, int board, Action action) {
+        int a = action.ordinal();
+        if (tokensPerNano[a] <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        IntObjectHashMap<Buckets> boards = players.get(player.getUniqueId());
+        if (boards == null) {
+            boards = new IntObjectHashMap<>();
+            players.put(player.getUniqueId(), boards);
+        }
+        Buckets buckets = boards.get(board);
+        if (buckets == null) {
+            removeFullBuckets(boards, now);
+            buckets = new Buckets();
+            for (int i = 0; i < ACTION_COUNT; i++) {
+                buckets.tokens[i] = burst[i];
+                buckets.refilled[i] = now;
+            }
+            boards.put(board, buckets);
+        }
+        double tokens = Math.min(burst[a], buckets.tokens[a] + (now - buckets.refilled[a]) * tokensPerNano[a]);
+        buckets.refilled[a] = now;
+        if (tokens < 1) {
+            buckets.tokens[a] = tokens;
+            return false;
+        }
+        buckets.tokens[a] = tokens - 1;
+        return true;
+    }
+
+    /**
+     * Remove the buckets of a player that have been refilled completely, like
+     * the buckets of boards that the player has left or that have been
+     * deleted
+     *
+     * @param boards the buckets of the player per board
+     * @param now the current value of {@link System#nanoTime()}
+     */
+    private void removeFullBuckets(IntObjectHashMap<Buckets> boards, long now) {
+        for (int board : boards.keys()) {
+            if (isFull(boards.get(board), now)) {
+                boards.remove(board);
+            }
+        }
+    }
+
+    private boolean isFull(Buckets buckets, long now) {
+        for (int i = 0; i < ACTION_COUNT; i++) {
+            if (tokensPerNano[i] > 0 && buckets.tokens[i] + (now - buckets.refilled[i]) * tokensPerNano[i] < burst[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forget the buckets of a player
+     *
+     * @param playerId the UUID of the player
+     */
+    public void forget(UUID playerId) {
+        players.remove(playerId);
+    }
+}
@@ -26,12 +26,12 @@ package com.github.cc007.headsweeper.controller;
 import com.github.cc007.headsweeper.HeadSweeper;
 import com.github.cc007.headsweeper.events.BoardCompletedEvent;
 import com.github.cc007.headsweeper.events.BoardExplodedEvent;
+import com.github.cc007.headsweeper.metrics.Histogram;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
 import com.github.cc007.mcsweeper.api.Field;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Level;
+import java.util.concurrent.atomic.LongAdder;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.FluidCollisionMode;
@@ -46,6 +46,7 @@ import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerAnimationEvent;
 import org.bukkit.event.player.PlayerAnimationType;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
  *
@@ -54,11 +55,24 @@ import org.bukkit.event.player.PlayerInteractEvent;
 public class HeadSweeperClickListener implements Listener {
 
     private final HeadSweeper plugin;
-    private final Map<Integer, Date> lastFlagged;
+    private final ClickThrottle clickThrottle;
+    private final Histogram clickTime;
+    private final LongAdder sweeps;
+    private final LongAdder flags;
+    private final LongAdder throttledClicks;
 
     public HeadSweeperClickListener(HeadSweeper plugin) {
         this.plugin = plugin;
-        lastFlagged = new HashMap<>();
+        clickThrottle = new ClickThrottle(
+                plugin.getConfig().getDouble("throttle.sweep.rate", 8),
+                plugin.getConfig().getDouble("throttle.sweep.burst", 4),
+                plugin.getConfig().getDouble("throttle.flag.rate", 4),
+                plugin.getConfig().getDouble("throttle.flag.burst", 2));
+        MetricsRegistry metrics = plugin.getMetricsRegistry();
+        clickTime = metrics.histogram(MetricsRegistry.CLICK_TIME);
+        sweeps = metrics.counter(MetricsRegistry.CLICK_SWEEPS);
+        flags = metrics.counter(MetricsRegistry.CLICK_FLAGS);
+        throttledClicks = metrics.counter(MetricsRegistry.CLICK_THROTTLED);
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
     }
 
@@ -75,7 +89,12 @@ public class HeadSweeperClickListener implements Listener {
         if(!event.getAnimationType().equals(PlayerAnimationType.ARM_SWING)){
             return;
         }
-        plugin.getLogger().info(event.toString());
+        if (!plugin.getProximityTracker().isNearBoard(event.getPlayer())) {
+            return;
+        }
+        if (plugin.isDebug()) {
+            plugin.getLogger().info(event.toString());
+        }
         
         Block clickedBlock = event.getPlayer().getTargetBlockExact(32, FluidCollisionMode.NEVER);
 
@@ -83,7 +102,7 @@ public class HeadSweeperClickListener implements Listener {
             return;
         }
 
-        if (clickedBlock.hasMetadata("sweeperBlock") && clickedBlock.getMetadata("sweeperBlock").get(0).asString().equals("underBlock")) {
+        if (plugin.getController().isUnderBlock(clickedBlock)) {
             return;
         }
 
@@ -95,6 +114,11 @@ public class HeadSweeperClickListener implements Listener {
         headClicked(clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ(), event.getPlayer(), activeGame);
     }
 
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        clickThrottle.forget(event.getPlayer().getUniqueId());
+    }
+
     @EventHandler
     public void onPlayerInteract(PlayerInteractEvent event) {
 
@@ -104,7 +128,7 @@ public class HeadSweeperClickListener implements Listener {
             return;
         }
 
-        if (clickedBlock.hasMetadata("sweeperBlock") && clickedBlock.getMetadata("sweeperBlock").get(0).asString().equals("underBlock")) {
+        if (plugin.getController().isUnderBlock(clickedBlock)) {
             event.setCancelled(true);
             return;
         }
@@ -125,30 +149,62 @@ public class HeadSweeperClickListener implements Listener {
     }
 
     public void headClicked(int x, int y, int z, Player player, HeadSweeperGame activeGame) {
+        long start = System.nanoTime();
+        try {
+            sweep(x, y, z, player, activeGame);
+        } finally {
+            clickTime.recordSince(start);
+        }
+    }
+
+    public void headFlagged(int x, int y, int z, Player player, HeadSweeperGame activeGame) {
+        long start = System.nanoTime();
+        try {
+            flag(x, y, z, player, activeGame);
+        } finally {
+            clickTime.recordSince(start);
+        }
+    }
+
+    private void sweep(int x, int y, int z, Player player, HeadSweeperGame activeGame) {
         if (!player.hasPermission("sweeper.interact")) {
             player.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "You don't have the permission to play minesweeper games. Ask an operator if you think you should have the permission.");
             return;
         }
+        if (!clickThrottle.tryAcquire(player, activeGame.getId(), ClickThrottle.Action.SWEEP)) {
+            throttledClicks.increment();
+            return;
+        }
         if (activeGame.getGame().hasWon() || activeGame.getGame().hasLost()) {
             player.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The game has already ended. Reset this board to play a new game.");
 
             // Bugfix for clientside bug that shows steve head for clicked tiles in 1.19
             activeGame.getWorld().getBlockAt(x, y, z).setType(Material.SKELETON_SKULL);
-            Bukkit.getScheduler().runTaskLater(plugin, activeGame::placeHeads, 2);
+            activeGame.invalidateTile(x - activeGame.getX(), z - activeGame.getZ());
+            plugin.getUpdateQueue().queueRender(activeGame, 2, new int[]{tileIndex(x, z, activeGame)});
             return;
         }
 
         int fieldX = x - activeGame.getX();
         int fieldY = z - activeGame.getZ();
-        activeGame.getGame().sweep(fieldX, fieldY);
-        plugin.saveGames();
+        if (activeGame.getStartTime() == 0) {
+            activeGame.setStartTime(System.currentTimeMillis());
+        }
+        int[] changedTiles = SweeperEngine.of(activeGame.getGame()).sweep(activeGame.getGame(), fieldX, fieldY);
+        sweeps.increment();
+        plugin.getPersister().recordSweep(plugin.getController().getGameNr(activeGame), fieldX, fieldY);
+        plugin.getBoardSync().sweepMade(activeGame, player, fieldX, fieldY);
         if (plugin.isInit()) {
             // Bugfix for clientside bug that shows steve head for clicked tiles in 1.19
             activeGame.getWorld().getBlockAt(x, y, z).setType(Material.SKELETON_SKULL);
-            Bukkit.getScheduler().runTaskLater(plugin, activeGame::placeHeads, 2);
+            activeGame.invalidateTile(fieldX, fieldY);
+            plugin.getUpdateQueue().queueRender(activeGame, 2, new int[]{tileIndex(x, z, activeGame)});
         } else {
-            plugin.getLogger().log(Level.SEVERE, "The plugin has not properly been initialized. Run /headsweeper updateheads to initialize the heads for this plugin");
-            player.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The plugin has not properly been initialized. Contact an admin to fix this issue");
+            plugin.sendHeadsNotReady(player);
+        }
+        plugin.getUpdateQueue().queueRender(activeGame, 2, changedTiles);
+        if (activeGame.getGame().hasWon() || activeGame.getGame().hasLost()) {
+            plugin.getAutoResetScheduler().gameEnded(activeGame);
         }
         if (activeGame.getGame().hasWon()) {
             Bukkit.getServer().getPluginManager().callEvent(new BoardCompletedEvent(player, plugin.getController().getGameNr(activeGame), new Location(player.getWorld(), x, y, z), new Date()));
@@ -160,22 +216,16 @@ public class HeadSweeperClickListener implements Listener {
 
     }
 
-    public void headFlagged(int x, int y, int z, Player player, HeadSweeperGame activeGame) {
+    private void flag(int x, int y, int z, Player player, HeadSweeperGame activeGame) {
         if (!player.hasPermission("sweeper.interact")) {
             player.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "You don't have the permission to play minesweeper games. Ask an operator if you think you should have the permission.");
             return;
         }
         int gameNr = plugin.getController().getGameNr(activeGame);
-        if (lastFlagged.containsKey(gameNr) && lastFlagged.get(gameNr) != null) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(new Date());
-            cal.add(Calendar.MILLISECOND, -250);
-            Date checkDate = cal.getTime();
-            if (lastFlagged.get(gameNr).after(checkDate)) {
-                return;
-            }
+        if (!clickThrottle.tryAcquire(player, gameNr, ClickThrottle.Action.FLAG)) {
+            throttledClicks.increment();
+            return;
         }
-        lastFlagged.put(gameNr, new Date());
         int fieldX = x - activeGame.getX();
         int fieldY = z - activeGame.getZ();
 
@@ -186,13 +236,31 @@ public class HeadSweeperClickListener implements Listener {
             return;
         }
 
-        activeGame.getGame().flag(fieldX, fieldY);
-        plugin.saveGames();
-        if (plugin.isInit()) {
-            activeGame.placeHeads();
-        } else {
-            plugin.getLogger().log(Level.SEVERE, "The plugin has not properly been initialized. Run /headsweeper updateheads to initialize the heads for this plugin");
-            player.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The plugin has not properly been initialized. Contact an admin to fix this issue");
+        int[] changedTiles = SweeperEngine.of(activeGame.getGame()).flag(activeGame.getGame(), fieldX, fieldY);
+        flags.increment();
+        plugin.getPersister().recordFlag(gameNr, fieldX, fieldY);
+        plugin.getBoardSync().flagMade(activeGame, player, fieldX, fieldY);
+        if (!plugin.isInit()) {
+            plugin.sendHeadsNotReady(player);
         }
+        plugin.getUpdateQueue().queueRender(activeGame, 0, changedTiles);
+        if (activeGame.getGame().hasWon()) {
+            // a game can also be won by flagging every bomb
+            plugin.getAutoResetScheduler().gameEnded(activeGame);
+            Bukkit.getServer().getPluginManager().callEvent(new BoardCompletedEvent(player, gameNr, new Location(player.getWorld(), x, y, z), new Date()));
+            player.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "You have won the game! Reset the board to play another game.");
+        }
+    }
+
+    /**
+     * Get the index of the tile at a block of a game
+     *
+     * @param x the x coordinate of the block
+     * @param z the z coordinate of the block
+     * @param game the game
+     * @return the index (y * width + x) of the tile
+     */
+    private static int tileIndex(int x, int z, HeadSweeperGame game) {
+        return (z - game.getZ()) * game.getGame().getField().getWidth() + x - game.getX();
     }
 }
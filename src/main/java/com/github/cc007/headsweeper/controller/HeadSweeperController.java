@@ -24,76 +24,151 @@
 package com.github.cc007.headsweeper.controller;
 
 import com.github.cc007.headsweeper.HeadSweeper;
-import com.github.cc007.mcsweeper.implementation.MineSweeper;
+import com.github.cc007.headsweeper.events.BoardResetEvent;
+import com.github.cc007.headsweeper.storage.BoardCodec;
+import com.github.cc007.headsweeper.storage.BoardData;
+import com.github.cc007.headsweeper.storage.PendingClear;
+import com.github.cc007.headsweeper.util.IntObjectHashMap;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
 
+import com.github.cc007.mcsweeper.api.Sweeper;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
  */
 public class HeadSweeperController {
 
-    private final List<HeadSweeperGame> sweeperGames;
+    private final IntObjectHashMap<HeadSweeperGame> sweeperGames;
+    private final BoardIndex boardIndex;
+    private final List<PendingClear> pendingClears;
     private final HeadSweeper plugin;
+    private int nextId;
+    private volatile long tileCount;
 
     public HeadSweeperController(HeadSweeper plugin, List<HeadSweeperGame> sweeperGames) {
-        this.sweeperGames = sweeperGames;
+        this.sweeperGames = new IntObjectHashMap<>(sweeperGames.size());
+        this.boardIndex = new BoardIndex();
+        this.pendingClears = new ArrayList<>();
         this.plugin = plugin;
+        for (HeadSweeperGame sweeperGame : sweeperGames) {
+            addGame(sweeperGame);
+        }
     }
 
     public HeadSweeperController(JsonObject input, HeadSweeper plugin) {
-        this.sweeperGames = new ArrayList<>();
+        this.sweeperGames = new IntObjectHashMap<>();
+        this.boardIndex = new BoardIndex();
+        this.pendingClears = new ArrayList<>();
+        this.plugin = plugin;
         JsonArray sweeperGamesJSON = input.getAsJsonArray("sweeperGames");
         if (sweeperGamesJSON != null) {
             for (int i = 0; i < sweeperGamesJSON.size(); i++) {
                 HeadSweeperGame sweeperGame = new HeadSweeperGame(sweeperGamesJSON.get(i).getAsJsonObject(), plugin);
-                sweeperGames.add(sweeperGame);
+                addGame(sweeperGame.getId() >= 0 ? sweeperGame.getId() : i, sweeperGame);
             }
         }
-        this.plugin = plugin;
     }
 
     public void createNewField(int x, int y, int z, int width, int height, int bombCount, CommandSender sender, World world) {
+        createNewField(x, y, z, width, height, bombCount, plugin.getDefaultEngine(), sender, world);
+    }
+
+    public void createNewField(int x, int y, int z, int width, int height, int bombCount, SweeperEngine engine, CommandSender sender, World world) {
         if (this.isIntersecting(world, x, y, z, width, height)) {
             sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There already is a minesweeper game at the specified location!");
         } else {
-            HeadSweeperGame newGame = new HeadSweeperGame(x, y, z, new MineSweeper(width, height, bombCount), world, plugin);
+            HeadSweeperGame newGame = new HeadSweeperGame(x, y, z, engine.create(width, height, bombCount), world, plugin);
             newGame.getGame().resetField();
-            int index = sweeperGames.size();
-            sweeperGames.add(newGame);
-            plugin.saveGames();
-            if (plugin.isInit()) {
-                newGame.placeHeads();
-                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The new minesweeper game has been created with game number " + index + ".");
-            } else {
-                plugin.getLogger().log(Level.SEVERE, "The plugin has not properly been initialized. Run /headsweeper updateheads to initialize the heads for this plugin");
-                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The plugin has not properly been initialized. Run /headsweeper updateheads to initialize the heads for this plugin");
-                removeGame(index);
+            int id = addGame(newGame);
+            plugin.getPersister().recordCreate(id, newGame);
+            plugin.getRenderScheduler().redraw(newGame, sender, null);
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The new minesweeper game has been created with game number " + id + ".");
+            if (!plugin.isInit()) {
+                plugin.sendHeadsNotReady(sender);
             }
         }
     }
 
     public void createNewField(Location location, int width, int height, int bombCount, CommandSender sender) {
-        this.createNewField(location.getBlockX(), location.getBlockY(), location.getBlockZ(), width, height, bombCount, sender, location.getWorld());
+        this.createNewField(location, width, height, bombCount, plugin.getDefaultEngine(), sender);
     }
 
-    public boolean isIntersecting(World world, int x, int y, int z, int width, int height) {
-        for (HeadSweeperGame sweeperGame : sweeperGames) {
-            if (sweeperGame.isIntersecting(world, x, y, z, width, height)) {
-                return true;
-            }
+    public void createNewField(Location location, int width, int height, int bombCount, SweeperEngine engine, CommandSender sender) {
+        this.createNewField(location.getBlockX(), location.getBlockY(), location.getBlockZ(), width, height, bombCount, engine, sender, location.getWorld());
+    }
+
+    /**
+     * Add a game to this controller. If the game doesn't have an id yet, it
+     * gets the next free id.
+     *
+     * @param sweeperGame the game to add
+     * @return the id of the game
+     */
+    public int addGame(HeadSweeperGame sweeperGame) {
+        return addGame(sweeperGame.getId() >= 0 ? sweeperGame.getId() : nextId, sweeperGame);
+    }
+
+    /**
+     * Add a game to this controller with the given id
+     *
+     * @param id the id of the game
+     * @param sweeperGame the game to add
+     * @return the id of the game
+     */
+    public int addGame(int id, HeadSweeperGame sweeperGame) {
+        if (id < 0 || sweeperGames.containsKey(id)) {
+            throw new IllegalArgumentException("There already is a game with game number " + id);
+        }
+        sweeperGame.setId(id);
+        sweeperGames.put(id, sweeperGame);
+        boardIndex.add(sweeperGame);
+        tileCount += sweeperGame.getTileCount();
+        nextId = Math.max(nextId, id + 1);
+        return id;
+    }
+
+    /**
+     * Add multiple games to this controller at once. The games get the next
+     * free ids and are added to the index in a single update.
+     *
+     * @param newGames the games to add
+     */
+    public void addGames(List<HeadSweeperGame> newGames) {
+        for (HeadSweeperGame sweeperGame : newGames) {
+            int id = nextId++;
+            sweeperGame.setId(id);
+            sweeperGames.put(id, sweeperGame);
+            tileCount += sweeperGame.getTileCount();
         }
-        return false;
+        boardIndex.addAll(newGames);
+    }
+
+    public boolean isIntersecting(World world, int x, int y, int z, int width, int height) {
+        return boardIndex.isIntersecting(world, x, y, z, width, height);
     }
 
     public HeadSweeperGame getActiveGame(World world, int x, int y, int z) {
@@ -101,54 +176,402 @@ public class HeadSweeperController {
     }
 
     public HeadSweeperGame getActiveGame(Block block) {
-        if (!block.hasMetadata("sweeperBlock") || !block.getMetadata("sweeperBlock").get(0).asString().equals("headBlock")) {
-            return null;
+        return boardIndex.getGameAt(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Check if a block is directly below one of the tiles of a game
+     *
+     * @param block the block
+     * @return true if the block is below a tile, otherwise false
+     */
+    public boolean isUnderBlock(Block block) {
+        return boardIndex.getGameAbove(block.getWorld(), block.getX(), block.getY(), block.getZ()) != null;
+    }
+
+    public int getGameNr(HeadSweeperGame activeGame) {
+        return sweeperGames.get(activeGame.getId()) == activeGame ? activeGame.getId() : -1;
+    }
+
+    /**
+     * Get the game with the given game number
+     *
+     * @param gameNr the game number
+     * @return the game, or null if there is no game with that game number
+     */
+    public HeadSweeperGame getGame(int gameNr) {
+        return sweeperGames.get(gameNr);
+    }
+
+    public boolean removeGame(int gameNr) {
+        return removeGame(gameNr, null);
+    }
+
+    /**
+     * Remove a game. Its tiles are replaced by air over the next ticks.
+     *
+     * @param gameNr the game number
+     * @param sender the sender that is told about the progress, or null
+     * @return true if the game has been removed, false if there is no game
+     * with that game number
+     */
+    public boolean removeGame(int gameNr, CommandSender sender) {
+        HeadSweeperGame sweeperGame = sweeperGames.remove(gameNr);
+        if (sweeperGame == null) {
+            return false;
         }
-        int x = block.getX(), y = block.getY(), z = block.getZ();
+        boardIndex.remove(sweeperGame);
+        tileCount -= sweeperGame.getTileCount();
+        plugin.getAutoResetScheduler().cancel(sweeperGame);
+        plugin.getPersister().recordDelete(gameNr);
+        plugin.getRenderScheduler().clear(sweeperGame, sender);
+        return true;
+    }
 
-        for (HeadSweeperGame sweeperGame : sweeperGames) {
-            if (sweeperGame.isInField(block.getWorld(), x, y, z)) {
-                return sweeperGame;
+    /**
+     * Reset a game. The new field is generated and encoded on a worker
+     * thread and swapped onto the game on the main thread, after which the
+     * reset is journaled and the board is redrawn over the next ticks. The
+     * {@link BoardResetEvent} is fired once the board has been redrawn.
+     *
+     * @param sweeperGame the game to reset
+     * @param sender the sender that is told about the progress, or null
+     * @return a future that completes on the main thread with the number of
+     * games that have been reset, once they have been redrawn
+     */
+    public CompletableFuture<Integer> resetGame(HeadSweeperGame sweeperGame, CommandSender sender) {
+        return resetGames(Collections.singletonList(sweeperGame), sender);
+    }
+
+    /**
+     * Reset multiple games at once. The new fields are generated in parallel
+     * on the worker pool and swapped onto the games on the main thread in a
+     * single task, after which the resets are journaled and the boards are
+     * redrawn as a single render job. A {@link BoardResetEvent} is fired for
+     * every board once all boards have been redrawn. Games that are deleted
+     * in the meantime are skipped.
+     *
+     * @param games the games to reset
+     * @param sender the sender that is told about the progress, or null
+     * @return a future that completes on the main thread with the number of
+     * games that have been reset, once they have been redrawn
+     */
+    public CompletableFuture<Integer> resetGames(Collection<HeadSweeperGame> games, CommandSender sender) {
+        List<HeadSweeperGame> sweeperGamesToReset = new ArrayList<>(games);
+        List<Supplier<Sweeper>> newGames = new ArrayList<>(sweeperGamesToReset.size());
+        for (HeadSweeperGame sweeperGame : sweeperGamesToReset) {
+            plugin.getAutoResetScheduler().cancel(sweeperGame);
+            newGames.add(SweeperEngine.of(sweeperGame.getGame()).newGameLike(sweeperGame.getGame()));
+        }
+        Player player = sender instanceof Player ? (Player) sender : null;
+        CompletableFuture<Integer> reset = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> newGames.parallelStream().map(newGame -> {
+            Sweeper game = newGame.get();
+            game.resetField();
+            return new ResetGame(game, BoardCodec.encodeGameState(game.serialize()));
+        }).collect(Collectors.toList()), plugin.getWorkers()).thenAcceptAsync(resetGames -> {
+            List<HeadSweeperGame> resetSweeperGames = new ArrayList<>(resetGames.size());
+            for (int i = 0; i < resetGames.size(); i++) {
+                HeadSweeperGame sweeperGame = sweeperGamesToReset.get(i);
+                if (sweeperGames.get(sweeperGame.getId()) != sweeperGame) {
+                    continue;
+                }
+                sweeperGame.setGame(resetGames.get(i).game);
+                plugin.getPersister().recordReset(sweeperGame.getId(), resetGames.get(i).encodedState);
+                plugin.getBoardSync().resetMade(sweeperGame, resetGames.get(i).encodedState);
+                resetSweeperGames.add(sweeperGame);
             }
+            Runnable onDone = () -> {
+                for (HeadSweeperGame sweeperGame : resetSweeperGames) {
+                    if (sweeperGames.get(sweeperGame.getId()) == sweeperGame) {
+                        Bukkit.getServer().getPluginManager().callEvent(new BoardResetEvent(player, sweeperGame.getId(), new Date()));
+                    }
+                }
+                reset.complete(resetSweeperGames.size());
+            };
+            if (resetSweeperGames.isEmpty()) {
+                onDone.run();
+            } else if (resetSweeperGames.size() == 1) {
+                plugin.getRenderScheduler().render(resetSweeperGames.get(0), sender, onDone);
+            } else {
+                plugin.getRenderScheduler().renderAll(resetSweeperGames, sender, onDone);
+            }
+        }, plugin.getMainThreadExecutor()).whenCompleteAsync((ignored, ex) -> {
+            if (ex != null) {
+                plugin.getLogger().log(Level.SEVERE, "Couldn't reset the boards", ex);
+                reset.completeExceptionally(ex);
+            }
+        }, plugin.getMainThreadExecutor());
+        return reset;
+    }
+
+    /**
+     * Create a grid of identical games. The fields are generated in parallel
+     * on the worker pool. The games are then added to the index and saved in
+     * a single snapshot on the main thread, and drawn as a single render job.
+     *
+     * @param location the location of the first game
+     * @param columns the number of games along the x axis
+     * @param rows the number of games along the z axis
+     * @param spacing the number of blocks between two games
+     * @param width the width of every game
+     * @param height the height of every game
+     * @param bombCount the number of bombs of every game
+     * @param engine the engine of the games
+     * @param sender the sender that is told about the progress
+     * @return a future that completes on the main thread with the games that
+     * have been created, which is empty if the arena couldn't be created
+     */
+    public CompletableFuture<List<HeadSweeperGame>> createArena(Location location, int columns, int rows, int spacing, int width, int height, int bombCount, SweeperEngine engine, CommandSender sender) {
+        World world = location.getWorld();
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+        String error = checkArena(x, z, columns, rows, spacing, width, height, bombCount, plugin.getMaxArenaBoards());
+        if (error != null) {
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + error);
+            return CompletableFuture.completedFuture(Collections.<HeadSweeperGame>emptyList());
+        }
+        int arenaWidth = columns * width + (columns - 1) * spacing;
+        int arenaHeight = rows * height + (rows - 1) * spacing;
+        if (isIntersecting(world, x, y, z, arenaWidth, arenaHeight)) {
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There already is a minesweeper game in the area of the arena!");
+            return CompletableFuture.completedFuture(Collections.<HeadSweeperGame>emptyList());
         }
+        int boardCount = columns * rows;
+        sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + "Creating " + boardCount + " boards...");
+        CompletableFuture<List<HeadSweeperGame>> created = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> IntStream.range(0, boardCount).parallel().mapToObj(i -> {
+            Sweeper game = engine.create(width, height, bombCount);
+            game.resetField();
+            return game;
+        }).collect(Collectors.toList()), plugin.getWorkers()).thenAcceptAsync(games -> {
+            if (isIntersecting(world, x, y, z, arenaWidth, arenaHeight)) {
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "There already is a minesweeper game in the area of the arena!");
+                created.complete(Collections.<HeadSweeperGame>emptyList());
+                return;
+            }
+            List<HeadSweeperGame> newGames = new ArrayList<>(boardCount);
+            for (int i = 0; i < boardCount; i++) {
+                int gameX = x + (i % columns) * (width + spacing);
+                int gameZ = z + (i / columns) * (height + spacing);
+                newGames.add(new HeadSweeperGame(gameX, y, gameZ, games.get(i), world, plugin));
+            }
+            addGames(newGames);
+            plugin.getPersister().flush();
+            plugin.getRenderScheduler().redrawAll(newGames, sender, null);
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + "The arena has been created with game numbers " + newGames.get(0).getId() + " to " + newGames.get(boardCount - 1).getId() + ".");
+            if (!plugin.isInit()) {
+                plugin.sendHeadsNotReady(sender);
+            }
+            created.complete(newGames);
+        }, plugin.getMainThreadExecutor()).whenCompleteAsync((ignored, ex) -> {
+            if (ex != null) {
+                plugin.getLogger().log(Level.SEVERE, "Couldn't create the arena", ex);
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.RED + "The arena couldn't be created.");
+                created.completeExceptionally(ex);
+            }
+        }, plugin.getMainThreadExecutor());
+        return created;
+    }
 
+    /**
+     * Check the dimensions of an arena before anything is created
+     *
+     * @param x the x coordinate of the first game
+     * @param z the z coordinate of the first game
+     * @param columns the number of games along the x axis
+     * @param rows the number of games along the z axis
+     * @param spacing the number of blocks between two games
+     * @param width the width of every game
+     * @param height the height of every game
+     * @param bombCount the number of bombs of every game
+     * @param maxBoards the maximum number of games in an arena
+     * @return the reason why the arena can't be created, or null if it can
+     */
+    private static String checkArena(int x, int z, int columns, int rows, int spacing, int width, int height, int bombCount, int maxBoards) {
+        if (columns < 1 || rows < 1 || spacing < 1) {
+            return "The arena needs at least one column and one row of boards and a spacing of at least one block!";
+        }
+        if (width < 1 || height < 1 || bombCount < 0 || bombCount >= (long) width * height) {
+            return "Every board needs at least one tile and fewer bombs than tiles!";
+        }
+        if ((long) columns * rows > maxBoards) {
+            return "An arena can have at most " + maxBoards + " boards!";
+        }
+        long arenaWidth = (long) columns * (width + (long) spacing);
+        long arenaHeight = (long) rows * (height + (long) spacing);
+        if ((long) x + arenaWidth > Integer.MAX_VALUE || (long) z + arenaHeight > Integer.MAX_VALUE) {
+            return "The arena is too large!";
+        }
         return null;
     }
 
-    public int getGameNr(HeadSweeperGame activeGame) {
-        int i = 0;
-        for (HeadSweeperGame sweeperGame : sweeperGames) {
-            if (sweeperGame.equals(activeGame)) {
-                return i;
-            }
-            i++;
+    private static final class ResetGame {
+
+        private final Sweeper game;
+        private final byte[] encodedState;
+
+        private ResetGame(Sweeper game, byte[] encodedState) {
+            this.game = game;
+            this.encodedState = encodedState;
         }
-        return -1;
     }
 
-    public HeadSweeperGame getGame(int gameNr) {
-        return sweeperGames.get(gameNr);
+    /**
+     * Add areas of deleted boards that still have to be replaced by air when
+     * their chunks are loaded
+     *
+     * @param pendingClears the areas that still have to be cleared
+     */
+    public void addPendingClears(Collection<PendingClear> pendingClears) {
+        this.pendingClears.addAll(pendingClears);
     }
 
-    public boolean removeGame(int gameNr) {
-        if (gameNr < sweeperGames.size()) {
-            getGame(gameNr).placeAir();
-            getGame(gameNr).removeMetaData();
-            sweeperGames.remove(gameNr);
-            plugin.saveGames();
-            return true;
+    /**
+     * Apply the pending changes to all chunks that are loaded already, like
+     * the chunks that were loaded before the games were
+     */
+    public void applyToLoadedChunks() {
+        for (HeadSweeperGame sweeperGame : sweeperGames.values()) {
+            if (sweeperGame.getWorld() != null) {
+                plugin.getRenderScheduler().render(sweeperGame, null, null);
+            }
+        }
+        for (PendingClear pendingClear : new ArrayList<>(pendingClears)) {
+            World world = Bukkit.getWorld(pendingClear.getWorldId());
+            if (world == null) {
+                continue;
+            }
+            for (long key : new ArrayList<>(pendingClear.getChunks())) {
+                int chunkX = (int) (key >> 32);
+                int chunkZ = (int) key;
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    chunkLoaded(world.getChunkAt(chunkX, chunkZ));
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the pending changes to a chunk that has just been loaded: the
+     * games with tiles in the chunk that changed while it was unloaded are
+     * rendered and the areas of deleted boards in the chunk are cleared.
+     * Games whose tiles in the chunk are up to date are left alone.
+     *
+     * @param chunk the chunk
+     */
+    public void chunkLoaded(Chunk chunk) {
+        World world = chunk.getWorld();
+        for (HeadSweeperGame sweeperGame : boardIndex.getGames(world, chunk.getX(), chunk.getZ())) {
+            if (sweeperGame.hasChangedTiles(chunk.getX(), chunk.getZ())) {
+                plugin.getRenderScheduler().render(sweeperGame, null, null);
+            }
+        }
+        if (pendingClears.isEmpty()) {
+            return;
+        }
+        long key = BoardIndex.chunkKey(chunk.getX(), chunk.getZ());
+        boolean cleared = false;
+        for (Iterator<PendingClear> it = pendingClears.iterator(); it.hasNext();) {
+            PendingClear pendingClear = it.next();
+            if (!pendingClear.getWorldId().equals(world.getUID()) || !pendingClear.getChunks().remove(key)) {
+                continue;
+            }
+            int minX = Math.max(pendingClear.getX(), chunk.getX() << 4);
+            int maxX = Math.min(pendingClear.getX() + pendingClear.getWidth() - 1, (chunk.getX() << 4) + 15);
+            int minZ = Math.max(pendingClear.getZ(), chunk.getZ() << 4);
+            int maxZ = Math.min(pendingClear.getZ() + pendingClear.getHeight() - 1, (chunk.getZ() << 4) + 15);
+            for (int blockX = minX; blockX <= maxX; blockX++) {
+                for (int blockZ = minZ; blockZ <= maxZ; blockZ++) {
+                    if (boardIndex.getGameAt(world, blockX, pendingClear.getY(), blockZ) == null) {
+                        world.getBlockAt(blockX, pendingClear.getY(), blockZ).setType(Material.AIR);
+                    }
+                }
+            }
+            if (pendingClear.getChunks().isEmpty()) {
+                it.remove();
+            }
+            cleared = true;
+        }
+        if (cleared) {
+            plugin.getPersister().requestSave();
         }
-        return false;
     }
 
+    /**
+     * Get the games of this controller, ordered by game number. Use
+     * {@link #addGame(HeadSweeperGame)} and {@link #removeGame(int)} to
+     * change the games.
+     *
+     * @return a copy of the list of games
+     */
     public List<HeadSweeperGame> getSweeperGames() {
-        return sweeperGames;
+        List<HeadSweeperGame> games = sweeperGames.values();
+        games.sort(Comparator.comparingInt(HeadSweeperGame::getId));
+        return games;
+    }
+
+    /**
+     * Get the number of games
+     *
+     * @return the number of games
+     */
+    public int getGameCount() {
+        return sweeperGames.size();
+    }
+
+    /**
+     * Get the number of tiles of all games together. This method can be
+     * called from any thread.
+     *
+     * @return the number of tiles
+     */
+    public long getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Get the spatial index of the games
+     *
+     * @return the spatial index of the games
+     */
+    public BoardIndex getBoardIndex() {
+        return boardIndex;
+    }
+
+    /**
+     * Get the state of all games as it should be stored
+     *
+     * @return the state of all games
+     */
+    public List<BoardData> snapshot() {
+        List<HeadSweeperGame> games = getSweeperGames();
+        List<BoardData> snapshot = new ArrayList<>(games.size());
+        for (HeadSweeperGame sweeperGame : games) {
+            snapshot.add(sweeperGame.toBoardData());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the areas of deleted boards that still have to be cleared, as they
+     * should be stored
+     *
+     * @return copies of the areas that still have to be cleared
+     */
+    public List<PendingClear> snapshotPendingClears() {
+        List<PendingClear> snapshot = new ArrayList<>(pendingClears.size());
+        for (PendingClear pendingClear : pendingClears) {
+            snapshot.add(pendingClear.copy());
+        }
+        return snapshot;
     }
 
     public JsonObject serialize() {
         JsonObject output = new JsonObject();
         JsonArray sweeperGamesJSON = new JsonArray();
-        for (HeadSweeperGame sweeperGame : sweeperGames) {
+        for (HeadSweeperGame sweeperGame : getSweeperGames()) {
             sweeperGamesJSON.add(sweeperGame.serialize());
         }
         output.add("sweeperGames", sweeperGamesJSON);
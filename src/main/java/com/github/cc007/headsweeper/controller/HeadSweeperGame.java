@@ -23,24 +23,23 @@
  */
 package com.github.cc007.headsweeper.controller;
 
-import com.github.cc007.headsplugin.api.HeadsPluginApi;
-import com.github.cc007.headsplugin.api.business.domain.Head;
-import com.github.cc007.headsplugin.api.business.services.heads.HeadPlacer;
 import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.storage.BoardData;
+import com.github.cc007.headsweeper.storage.PendingClear;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
 import com.github.cc007.mcsweeper.api.Field;
 import com.github.cc007.mcsweeper.api.Sweeper;
-import com.github.cc007.mcsweeper.implementation.MineSweeper;
 
 import com.google.gson.JsonObject;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
-import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.plugin.Plugin;
 
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -49,12 +48,18 @@ import java.util.UUID;
  */
 public class HeadSweeperGame {
 
+    private int id = -1;
     private int x;
     private int y;
     private int z;
     private Sweeper game;
     private World world;
     private final Plugin plugin;
+    private byte[] renderedStates;
+    private Location renderLocation;
+    private int autoResetDelay = -1;
+    private long startTime;
+    private long syncVersion;
 
     public HeadSweeperGame(int x, int y, int z, Sweeper game, World world, Plugin plugin) {
         this.x = x;
@@ -63,31 +68,76 @@ public class HeadSweeperGame {
         this.game = game;
         this.world = world;
         this.plugin = plugin;
-
-        initMetaData();
     }
 
     public HeadSweeperGame(JsonObject input, Plugin plugin) {
+        this(BoardData.fromJson(input), plugin);
+    }
+
+    public HeadSweeperGame(BoardData data, Plugin plugin) {
+        this(data, data.createGame(), plugin);
+    }
+
+    public HeadSweeperGame(BoardData data, Sweeper game, Plugin plugin) {
 
         this.plugin = plugin;
 
-        x = input.getAsJsonPrimitive("x").getAsInt();
-        y = input.getAsJsonPrimitive("y").getAsInt();
-        z = input.getAsJsonPrimitive("z").getAsInt();
+        id = data.getId();
+        x = data.getX();
+        y = data.getY();
+        z = data.getZ();
 
-        game = new MineSweeper(true);
-        game.deserialize(input.getAsJsonObject("game"));
+        this.game = game;
 
-        world = null;
+        if (data.getWorldId() != null) {
+            world = Bukkit.getServer().getWorld(data.getWorldId());
+        } else {
+            world = Bukkit.getServer().getWorld(data.getWorldName());
+        }
 
-        try {
-            UUID worldUID = UUID.fromString(input.getAsJsonPrimitive("world").getAsString());
-            world = Bukkit.getServer().getWorld(worldUID);
-        } catch (IllegalArgumentException e) {
-            world = Bukkit.getServer().getWorld(input.getAsJsonPrimitive("world").getAsString());
+        autoResetDelay = data.getAutoResetDelay();
+        syncVersion = data.getSyncVersion();
+
+        byte[] rendered = data.getRenderedStates();
+        if (rendered != null && rendered.length == game.getField().getWidth() * game.getField().getHeight()) {
+            renderedStates = rendered;
         }
+    }
+
+    /**
+     * Get the game number of this game
+     *
+     * @return the game number, or -1 if the game hasn't been added to a
+     * controller yet
+     */
+    public int getId() {
+        return id;
+    }
 
-        initMetaData();
+    void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Get the number of seconds after which this game is reset once it has
+     * been won or lost
+     *
+     * @return the delay in seconds, 0 if this game isn't reset automatically
+     * or -1 if this game uses the configured default
+     */
+    public int getAutoResetDelay() {
+        return autoResetDelay;
+    }
+
+    /**
+     * Set the number of seconds after which this game is reset once it has
+     * been won or lost
+     *
+     * @param autoResetDelay the delay in seconds, 0 to never reset this game
+     * automatically or -1 to use the configured default
+     */
+    public void setAutoResetDelay(int autoResetDelay) {
+        this.autoResetDelay = autoResetDelay;
     }
 
     /**
@@ -160,6 +210,46 @@ public class HeadSweeperGame {
      */
     public void setGame(Sweeper game) {
         this.game = game;
+        this.startTime = 0;
+    }
+
+    /**
+     * Get the number of moves and resets that have been done on this game,
+     * as used to keep the boards of multiple servers in sync
+     *
+     * @return the sync version of this game
+     */
+    public long getSyncVersion() {
+        return syncVersion;
+    }
+
+    /**
+     * Set the sync version of this game
+     *
+     * @param syncVersion the new sync version
+     */
+    public void setSyncVersion(long syncVersion) {
+        this.syncVersion = syncVersion;
+    }
+
+    /**
+     * Get the time at which the first tile of the current game was swept.
+     * This time isn't saved, so it is 0 for games that were started before
+     * the server restarted.
+     *
+     * @return the start time in milliseconds, or 0 if it isn't known
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Set the time at which the first tile of the current game was swept
+     *
+     * @param startTime the start time in milliseconds
+     */
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
     }
 
     /**
@@ -193,6 +283,20 @@ public class HeadSweeperGame {
         return false;
     }
 
+    /**
+     * Check if the given location is directly below one of the tiles of this
+     * game
+     *
+     * @param world the world of the location
+     * @param x the x coordinate of the location
+     * @param y the y coordinate of the location
+     * @param z the z coordinate of the location
+     * @return true if the location is below a tile, otherwise false
+     */
+    public boolean isUnderField(World world, int x, int y, int z) {
+        return this.y != 0 && isInField(world, x, y + 1, z);
+    }
+
     public boolean isInField(World world, int x, int y, int z) {
         if (this.world.equals(world)) {
             if (this.y == y) {
@@ -206,75 +310,196 @@ public class HeadSweeperGame {
         return false;
     }
 
-    public void placeHeads() {
-        HeadPlacer headPlacer = HeadsPluginApi.getHeadsPluginServices().orElseThrow(IllegalStateException::new).headPlacer();
-        for (int i = 0; i < game.getField().getWidth(); i++) {
-            for (int j = 0; j < game.getField().getHeight(); j++) {
-                Head head = getHeadAt(i, j);
-                Location headLocation = new Location(world, x + i, y, z + j);
-                headPlacer.placeHead(head, headLocation, BlockFace.NORTH);
+    /**
+     * Place the heads for all tiles whose state differs from the state that
+     * was last placed in the world. Tiles in chunks that aren't loaded are
+     * skipped and stay pending until their chunk is loaded, so that rendering
+     * never loads chunks.
+     *
+     * @return the number of heads that have been placed
+     */
+    public int placeHeads() {
+        Field field = game.getField();
+        int width = field.getWidth();
+        int height = field.getHeight();
+        int placed = 0;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (placeHead(i, j)) {
+                    placed++;
+                }
             }
         }
+        return placed;
     }
 
-    public void placeAir() {
-        for (int i = 0; i < game.getField().getWidth(); i++) {
-            for (int j = 0; j < game.getField().getHeight(); j++) {
-                world.getBlockAt(x + i, y, z + j).setType(Material.AIR);
-            }
+    /**
+     * Get the number of tiles of this game
+     *
+     * @return the width times the height of the field
+     */
+    public int getTileCount() {
+        return game.getField().getWidth() * game.getField().getHeight();
+    }
+
+    /**
+     * Place the head for a single tile if its state differs from the state
+     * that was last placed in the world and its chunk is loaded
+     *
+     * @param fieldX the x coordinate of the tile on the field
+     * @param fieldY the y coordinate of the tile on the field
+     * @return true if a head has been placed, otherwise false
+     */
+    public boolean placeHead(int fieldX, int fieldY) {
+        Field field = game.getField();
+        int width = field.getWidth();
+        byte[] rendered = getRenderedStates(width, field.getHeight());
+        byte state = TileState.toCode(field.getState(fieldX, fieldY));
+        if (rendered[fieldY * width + fieldX] == state || !world.isChunkLoaded((x + fieldX) >> 4, (z + fieldY) >> 4)) {
+            return false;
+        }
+        if (renderLocation == null || renderLocation.getWorld() != world) {
+            renderLocation = new Location(world, 0, y, 0);
         }
+        renderLocation.setX(x + fieldX);
+        renderLocation.setY(y);
+        renderLocation.setZ(z + fieldY);
+        HeadSweeper.TILE_HEADS.place(state, renderLocation);
+        rendered[fieldY * width + fieldX] = state;
+        return true;
     }
 
-    private Head getHeadAt(int x, int y) {
-        if (game.getField().getState(x, y) == Field.BOMB_STATE) {
-            return HeadSweeper.BOMB_HEAD;
-        } else if (game.getField().getState(x, y) == Field.UNKNOWN_STATE) {
-            return HeadSweeper.UNKNOWN_HEAD;
-        } else if (game.getField().getState(x, y) == Field.FLAG_STATE) {
-            return HeadSweeper.FLAG_HEAD;
-        } else {
-            return HeadSweeper.NUMBER_HEADS.get(game.getField().getState(x, y));
+    /**
+     * Get if the tiles of this game in a chunk differ from what was last
+     * placed in the world
+     *
+     * @param chunkX the x coordinate of the chunk
+     * @param chunkZ the z coordinate of the chunk
+     * @return true if a tile in the chunk has to be rendered
+     */
+    public boolean hasChangedTiles(int chunkX, int chunkZ) {
+        Field field = game.getField();
+        int width = field.getWidth();
+        byte[] rendered = getRenderedStates(width, field.getHeight());
+        int minX = Math.max(x, chunkX << 4) - x;
+        int maxX = Math.min(x + width - 1, (chunkX << 4) + 15) - x;
+        int minY = Math.max(z, chunkZ << 4) - z;
+        int maxY = Math.min(z + field.getHeight() - 1, (chunkZ << 4) + 15) - z;
+        for (int fieldY = minY; fieldY <= maxY; fieldY++) {
+            for (int fieldX = minX; fieldX <= maxX; fieldX++) {
+                if (rendered[fieldY * width + fieldX] != TileState.toCode(field.getState(fieldX, fieldY))) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
 
-    public JsonObject serialize() {
-        JsonObject output = new JsonObject();
-        output.addProperty("x", x);
-        output.addProperty("y", y);
-        output.addProperty("z", z);
-        output.add("game", game.serialize());
-        output.addProperty("world", world.getUID().toString());
-        return output;
+    /**
+     * Place the heads for all tiles, regardless of what was placed before
+     */
+    public void redrawHeads() {
+        invalidateTiles();
+        placeHeads();
     }
 
-    private void initMetaData() {
-        for (int i = x; i < x + this.getGame().getField().getWidth(); i++) {
-            for (int j = z; j < z + this.getGame().getField().getHeight(); j++) {
+    /**
+     * Mark a tile as changed in the world, so that the next call to
+     * {@link #placeHeads()} will place its head again
+     *
+     * @param fieldX the x coordinate of the tile on the field
+     * @param fieldY the y coordinate of the tile on the field
+     */
+    public void invalidateTile(int fieldX, int fieldY) {
+        int width = game.getField().getWidth();
+        int height = game.getField().getHeight();
+        if (fieldX >= 0 && fieldY >= 0 && fieldX < width && fieldY < height) {
+            getRenderedStates(width, height)[fieldY * width + fieldX] = TileState.NOT_RENDERED;
+        }
+    }
 
-                Block headBlock = this.getWorld().getBlockAt(i, this.getY(), j);
-                headBlock.setMetadata("sweeperBlock", new FixedMetadataValue(plugin, "headBlock"));
+    /**
+     * Mark all tiles as changed in the world
+     */
+    public void invalidateTiles() {
+        if (renderedStates != null) {
+            Arrays.fill(renderedStates, TileState.NOT_RENDERED);
+        }
+    }
 
-                if (this.getY() != 0) {
-                    Block underBlock = this.getWorld().getBlockAt(i, this.getY() - 1, j);
-                    underBlock.setMetadata("sweeperBlock", new FixedMetadataValue(plugin, "underBlock"));
+    /**
+     * Replace the tiles with air. Tiles in chunks that aren't loaded are left
+     * alone, so that removing a board never loads chunks.
+     *
+     * @return the tiles that still have to be replaced when their chunks are
+     * loaded, or null if all tiles have been replaced
+     */
+    public PendingClear placeAir() {
+        int width = game.getField().getWidth();
+        int height = game.getField().getHeight();
+        Set<Long> unloadedChunks = new LinkedHashSet<>();
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                int chunkX = (x + i) >> 4;
+                int chunkZ = (z + j) >> 4;
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    world.getBlockAt(x + i, y, z + j).setType(Material.AIR);
+                } else {
+                    unloadedChunks.add(BoardIndex.chunkKey(chunkX, chunkZ));
                 }
             }
         }
+        invalidateTiles();
+        if (unloadedChunks.isEmpty()) {
+            return null;
+        }
+        return new PendingClear(world.getUID(), x, y, z, width, height, unloadedChunks);
     }
 
-    void removeMetaData() {
-        for (int i = x; i < x + this.getGame().getField().getWidth(); i++) {
-            for (int j = this.getZ(); j < z + this.getGame().getField().getHeight(); j++) {
-
-                Block headBlock = this.getWorld().getBlockAt(i, this.getY(), j);
-                headBlock.removeMetadata("sweeperBlock", plugin);
+    private byte[] getRenderedStates(int width, int height) {
+        if (renderedStates == null || renderedStates.length != width * height) {
+            renderedStates = new byte[width * height];
+            Arrays.fill(renderedStates, TileState.NOT_RENDERED);
+        }
+        return renderedStates;
+    }
 
-                if (this.getY() != 0) {
-                    Block underBlock = this.getWorld().getBlockAt(i, this.getY() - 1, j);
-                    underBlock.removeMetadata("sweeperBlock", plugin);
-                }
-            }
+    public JsonObject serialize() {
+        JsonObject output = new JsonObject();
+        output.addProperty("id", id);
+        output.addProperty("x", x);
+        output.addProperty("y", y);
+        output.addProperty("z", z);
+        output.add("game", game.serialize());
+        output.addProperty("world", world.getUID().toString());
+        if (autoResetDelay >= 0) {
+            output.addProperty("autoResetDelay", autoResetDelay);
         }
+        if (syncVersion > 0) {
+            output.addProperty("syncVersion", syncVersion);
+        }
+        return output;
+    }
+
+    /**
+     * Get the state of this game as it should be stored. The game is only
+     * captured here; it is serialized when the board data is encoded, which
+     * can happen on another thread.
+     *
+     * @return the state of this game
+     */
+    public BoardData toBoardData() {
+        byte[] rendered = renderedStates == null ? null : renderedStates.clone();
+        return new BoardData.Builder()
+                .id(id)
+                .location(x, y, z)
+                .worldId(world.getUID())
+                .size(game.getField().getWidth(), game.getField().getHeight())
+                .gameState(SweeperEngine.of(game).serializeLater(game))
+                .renderedStates(rendered)
+                .autoResetDelay(autoResetDelay)
+                .syncVersion(syncVersion)
+                .build();
     }
 
 }
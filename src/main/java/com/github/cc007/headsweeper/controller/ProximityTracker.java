@@ -0,0 +1,177 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsweeper.HeadSweeper;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps track of the nearest board of every player. The nearest board is only
+ * updated when a player enters another chunk, or when boards are added or
+ * removed, so that checking if a player can reach a board is cheap.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class ProximityTracker implements Listener {
+
+    /**
+     * The number of chunks around the chunk of a player in which boards are
+     * within reach. Clicks are traced up to 32 blocks, which is at most 2
+     * chunks away from any block in the chunk of the player.
+     */
+    private static final int REACH_CHUNKS = 2;
+
+    private final HeadSweeper plugin;
+    private final Map<UUID, Proximity> proximities;
+
+    private static final class Proximity {
+
+        private final UUID worldId;
+        private final int chunkX;
+        private final int chunkZ;
+        private final int indexVersion;
+        private final HeadSweeperGame nearestGame;
+
+        private Proximity(UUID worldId, int chunkX, int chunkZ, int indexVersion, HeadSweeperGame nearestGame) {
+            this.worldId = worldId;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.indexVersion = indexVersion;
+            this.nearestGame = nearestGame;
+        }
+    }
+
+    public ProximityTracker(HeadSweeper plugin) {
+        this.plugin = plugin;
+        this.proximities = new HashMap<>();
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Get if a player is close enough to a board to click it
+     *
+     * @param player the player
+     * @return true if there is a board within reach of the player
+     */
+    public boolean isNearBoard(Player player) {
+        return getNearestGame(player) != null;
+    }
+
+    /**
+     * Get the nearest board within reach of a player
+     *
+     * @param player the player
+     * @return the nearest board, or null if there is no board within reach
+     */
+    public HeadSweeperGame getNearestGame(Player player) {
+        Proximity proximity = proximities.get(player.getUniqueId());
+        if (proximity == null || proximity.indexVersion != plugin.getController().getBoardIndex().getVersion()) {
+            proximity = update(player, player.getLocation());
+        }
+        return proximity.nearestGame;
+    }
+
+    private Proximity update(Player player, Location location) {
+        World world = location.getWorld();
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+        BoardIndex boardIndex = plugin.getController().getBoardIndex();
+        HeadSweeperGame nearestGame = null;
+        long nearestDistance = Long.MAX_VALUE;
+        for (int x = chunkX - REACH_CHUNKS; x <= chunkX + REACH_CHUNKS; x++) {
+            for (int z = chunkZ - REACH_CHUNKS; z <= chunkZ + REACH_CHUNKS; z++) {
+                for (HeadSweeperGame game : boardIndex.getGames(world, x, z)) {
+                    long distance = distanceSquared(game, location.getBlockX(), location.getBlockZ());
+                    if (distance < nearestDistance) {
+                        nearestDistance = distance;
+                        nearestGame = game;
+                    }
+                }
+            }
+        }
+        Proximity proximity = new Proximity(world.getUID(), chunkX, chunkZ, boardIndex.getVersion(), nearestGame);
+        proximities.put(player.getUniqueId(), proximity);
+        return proximity;
+    }
+
+    private static long distanceSquared(HeadSweeperGame game, int x, int z) {
+        int width = game.getGame().getField().getWidth();
+        int height = game.getGame().getField().getHeight();
+        long dx = Math.max(0, Math.max(game.getX() - x, x - (game.getX() + width - 1)));
+        long dz = Math.max(0, Math.max(game.getZ() - z, z - (game.getZ() + height - 1)));
+        return dx * dx + dz * dz;
+    }
+
+    private void moved(Player player, Location to) {
+        if (to == null || to.getWorld() == null) {
+            return;
+        }
+        Proximity proximity = proximities.get(player.getUniqueId());
+        if (proximity == null
+                || proximity.chunkX != to.getBlockX() >> 4
+                || proximity.chunkZ != to.getBlockZ() >> 4
+                || !proximity.worldId.equals(to.getWorld().getUID())) {
+            update(player, to);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        moved(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        moved(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        moved(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        moved(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        proximities.remove(event.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,724 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.metrics.Histogram;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import com.github.cc007.headsweeper.storage.PendingClear;
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Spreads the rendering of boards over multiple ticks. Every tick at most a
+ * configured number of blocks is changed, within a configured amount of time.
+ * The tiles of a board are rendered in square rings around the tile that is
+ * nearest to a player, so that the part of the board that players can see is
+ * done first.
+ * The scheduler is started once the heads have been initialized, jobs that
+ * are scheduled before that wait in the queue.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class RenderScheduler implements Runnable {
+
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+    private static final int TIME_CHECK_INTERVAL = 64;
+
+    private final HeadSweeper plugin;
+    private final int maxBlocksPerTick;
+    private final long maxNanosPerTick;
+    private final Deque<Job> jobs;
+    private final Map<HeadSweeperGame, RenderJob> renderJobs;
+    private final Histogram tickTime;
+    private final LongAdder renderedBlocks;
+    private final Histogram blocksPerRedraw;
+    private BukkitTask task;
+
+    public RenderScheduler(HeadSweeper plugin, int maxBlocksPerTick, long maxMillisPerTick) {
+        this.plugin = plugin;
+        this.maxBlocksPerTick = Math.max(1, maxBlocksPerTick);
+        this.maxNanosPerTick = Math.max(1, maxMillisPerTick) * 1_000_000L;
+        this.jobs = new ArrayDeque<>();
+        this.renderJobs = new IdentityHashMap<>();
+        this.tickTime = plugin.getMetricsRegistry().histogram(MetricsRegistry.RENDER_TICK_TIME);
+        this.renderedBlocks = plugin.getMetricsRegistry().counter(MetricsRegistry.RENDER_BLOCKS);
+        this.blocksPerRedraw = plugin.getMetricsRegistry().histogram(MetricsRegistry.RENDER_BLOCKS_PER_REDRAW);
+    }
+
+    /**
+     * Start rendering the scheduled jobs, one slice per tick. The heads have
+     * to be initialized before rendering is started.
+     */
+    public void start() {
+        if (task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1, 1);
+        }
+    }
+
+    /**
+     * Stop rendering. The tiles of boards that haven't been rendered yet
+     * stay marked as not rendered and the areas of deleted boards that
+     * haven't been cleared yet become pending clears, so that both can be
+     * finished after a restart.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Job job : jobs) {
+            job.abort();
+        }
+        jobs.clear();
+        renderJobs.clear();
+    }
+
+    /**
+     * Schedule the heads of a game to be placed for all tiles whose state
+     * differs from the state that was last placed in the world. If the game
+     * is already scheduled, its job starts over and keeps the sender and the
+     * callback of the earlier job.
+     *
+     * @param game the game
+     * @param sender the sender that is told about the progress, or null
+     * @param onDone the task to run once all heads have been placed, or null
+     */
+    public void render(HeadSweeperGame game, CommandSender sender, Runnable onDone) {
+        RenderJob previous = renderJobs.remove(game);
+        if (previous != null) {
+            jobs.remove(previous);
+            if (sender == null) {
+                sender = previous.getSender();
+            }
+            Runnable previousDone = ((HeadsJob) previous).onDone;
+            if (previousDone != null) {
+                Runnable nextDone = onDone;
+                onDone = nextDone == null ? previousDone : () -> {
+                    previousDone.run();
+                    nextDone.run();
+                };
+            }
+        }
+        RenderJob job = new HeadsJob(game, sender, onDone, previous);
+        renderJobs.put(game, job);
+        jobs.add(job);
+    }
+
+    /**
+     * Schedule the heads of multiple games to be placed as a single job. The
+     * games are rendered one after another and the sender is told about the
+     * progress of the job as a whole. Games that are scheduled again or
+     * removed before their turn are skipped by this job.
+     *
+     * @param games the games
+     * @param sender the sender that is told about the progress, or null
+     * @param onDone the task to run once all heads have been placed, or null
+     */
+    public void renderAll(Collection<HeadSweeperGame> games, CommandSender sender, Runnable onDone) {
+        Deque<HeadsJob> parts = new ArrayDeque<>(games.size());
+        for (HeadSweeperGame game : games) {
+            RenderJob previous = renderJobs.remove(game);
+            Runnable previousDone = null;
+            if (previous != null) {
+                jobs.remove(previous);
+                previousDone = ((HeadsJob) previous).onDone;
+            }
+            HeadsJob part = new HeadsJob(game, null, previousDone, previous);
+            renderJobs.put(game, part);
+            parts.add(part);
+        }
+        jobs.add(new BatchJob(parts, sender, onDone));
+    }
+
+    /**
+     * Schedule the heads of all tiles of multiple games to be placed as a
+     * single job, regardless of what was placed before
+     *
+     * @param games the games
+     * @param sender the sender that is told about the progress, or null
+     * @param onDone the task to run once all heads have been placed, or null
+     */
+    public void redrawAll(Collection<HeadSweeperGame> games, CommandSender sender, Runnable onDone) {
+        for (HeadSweeperGame game : games) {
+            game.invalidateTiles();
+        }
+        renderAll(games, sender, onDone);
+    }
+
+    /**
+     * Schedule the heads of all tiles of a game to be placed, regardless of
+     * what was placed before
+     *
+     * @param game the game
+     * @param sender the sender that is told about the progress, or null
+     * @param onDone the task to run once all heads have been placed, or null
+     */
+    public void redraw(HeadSweeperGame game, CommandSender sender, Runnable onDone) {
+        game.invalidateTiles();
+        render(game, sender, onDone);
+    }
+
+    /**
+     * Schedule the tiles of a game that has been removed to be replaced by
+     * air. Tiles that belong to another game by the time they are cleared are
+     * left alone.
+     *
+     * @param game the removed game
+     * @param sender the sender that is told about the progress, or null
+     */
+    public void clear(HeadSweeperGame game, CommandSender sender) {
+        RenderJob previous = renderJobs.remove(game);
+        if (previous != null) {
+            jobs.remove(previous);
+        }
+        game.invalidateTiles();
+        jobs.add(new AirJob(game, sender));
+    }
+
+    /**
+     * Get the number of jobs that are waiting to be rendered
+     *
+     * @return the number of jobs
+     */
+    public int getQueuedJobs() {
+        return jobs.size();
+    }
+
+    /**
+     * Get if a game still has tiles that are scheduled to be rendered
+     *
+     * @param game the game
+     * @return true if the game is scheduled to be rendered
+     */
+    public boolean isScheduled(HeadSweeperGame game) {
+        return renderJobs.containsKey(game);
+    }
+
+    @Override
+    public void run() {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + maxNanosPerTick;
+        int budget = maxBlocksPerTick;
+        while (budget > 0 && !jobs.isEmpty()) {
+            Job job = jobs.peek();
+            budget = job.render(budget, deadline);
+            if (job.isDone()) {
+                jobs.poll();
+                if (job instanceof HeadsJob) {
+                    renderJobs.remove(((HeadsJob) job).game);
+                }
+                job.finish();
+            } else {
+                job.reportProgress();
+                break;
+            }
+        }
+        renderedBlocks.add(maxBlocksPerTick - budget);
+        tickTime.recordSince(start);
+    }
+
+    /**
+     * A job that is rendered in slices, which reports its progress to the
+     * sender that scheduled it
+     */
+    private abstract class Job {
+
+        private final CommandSender sender;
+        private long lastReport;
+        private boolean reported;
+
+        private Job(CommandSender sender) {
+            this.sender = sender;
+        }
+
+        CommandSender getSender() {
+            return sender;
+        }
+
+        /**
+         * Render tiles until the budget or the time runs out
+         *
+         * @param budget the number of blocks that may still be changed
+         * @param deadline the value of {@link System#nanoTime()} at which
+         * rendering has to stop
+         * @return the remaining budget
+         */
+        abstract int render(int budget, long deadline);
+
+        abstract boolean isDone();
+
+        /**
+         * Get the progress of this job
+         *
+         * @return the percentage of the tiles that have been rendered
+         */
+        abstract int getProgress();
+
+        abstract String describe();
+
+        abstract void done();
+
+        abstract void abort();
+
+        /**
+         * Start the interval after which the progress is first reported
+         */
+        void startReporting() {
+            lastReport = System.nanoTime();
+        }
+
+        void reportProgress() {
+            if (sender == null || System.nanoTime() - lastReport < PROGRESS_INTERVAL_NANOS) {
+                return;
+            }
+            lastReport = System.nanoTime();
+            reported = true;
+            sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GOLD + describe() + ": " + getProgress() + "%");
+        }
+
+        void finish() {
+            if (sender != null && reported) {
+                sender.sendMessage(plugin.pluginChatPrefix() + ChatColor.GREEN + describe() + ": done");
+            }
+            done();
+        }
+    }
+
+    /**
+     * A board that is being rendered. The center of the rings in which the
+     * tiles are rendered is chosen when the job is first run, so that it uses
+     * the positions of the players at that time. A job that replaces an
+     * earlier job of the same board keeps the center of that job.
+     */
+    private abstract class RenderJob extends Job {
+
+        protected final HeadSweeperGame game;
+        protected final World world;
+        protected final int width;
+        protected final int height;
+        private TileOrder order;
+        private int position;
+        private int placed;
+
+        private RenderJob(HeadSweeperGame game, CommandSender sender, RenderJob previous) {
+            super(sender);
+            this.game = game;
+            this.world = game.getWorld();
+            this.width = game.getGame().getField().getWidth();
+            this.height = game.getGame().getField().getHeight();
+            if (previous != null && previous.order != null && previous.width == width && previous.height == height) {
+                this.order = previous.order.restart();
+            }
+        }
+
+        @Override
+        int render(int budget, long deadline) {
+            if (position == 0) {
+                if (order == null) {
+                    order = orderTiles();
+                }
+                startReporting();
+            }
+            int tileCount = width * height;
+            int checked = 0;
+            while (position < tileCount && budget > 0) {
+                int tile = order.next();
+                position++;
+                if (renderTile(tile % width, tile / width)) {
+                    budget--;
+                    placed++;
+                }
+                if (++checked % TIME_CHECK_INTERVAL == 0 && System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+            }
+            return budget;
+        }
+
+        @Override
+        boolean isDone() {
+            return order != null && position >= width * height;
+        }
+
+        @Override
+        int getProgress() {
+            return width * height == 0 ? 0 : (int) (position * 100L / (width * height));
+        }
+
+        /**
+         * Get the number of tiles that this job has rendered so far
+         *
+         * @return the number of rendered tiles
+         */
+        int getRendered() {
+            return position;
+        }
+
+        /**
+         * Get the number of blocks that this job has changed so far
+         *
+         * @return the number of changed blocks
+         */
+        int getPlaced() {
+            return placed;
+        }
+
+        /**
+         * Order the tiles in rings around the tile that is nearest to a
+         * player in the world of the board. Only the players are looked at
+         * here; the tiles are produced while rendering, within the budget.
+         *
+         * @return the order of the tiles
+         */
+        private TileOrder orderTiles() {
+            List<Player> players = world == null ? Collections.<Player>emptyList() : world.getPlayers();
+            int centerX = 0;
+            int centerY = 0;
+            long nearest = Long.MAX_VALUE;
+            for (Player player : players) {
+                Location location = player.getLocation();
+                int fieldX = Math.max(0, Math.min(width - 1, location.getBlockX() - game.getX()));
+                int fieldY = Math.max(0, Math.min(height - 1, location.getBlockZ() - game.getZ()));
+                long dx = location.getBlockX() - (game.getX() + fieldX);
+                long dz = location.getBlockZ() - (game.getZ() + fieldY);
+                if (dx * dx + dz * dz < nearest) {
+                    nearest = dx * dx + dz * dz;
+                    centerX = fieldX;
+                    centerY = fieldY;
+                }
+            }
+            return new TileOrder(width, height, centerX, centerY);
+        }
+
+        /**
+         * Render a single tile
+         *
+         * @param fieldX the x coordinate of the tile on the field
+         * @param fieldY the y coordinate of the tile on the field
+         * @return true if a block has been changed
+         */
+        abstract boolean renderTile(int fieldX, int fieldY);
+    }
+
+    private final class HeadsJob extends RenderJob {
+
+        private final Runnable onDone;
+
+        private HeadsJob(HeadSweeperGame game, CommandSender sender, Runnable onDone, RenderJob previous) {
+            super(game, sender, previous);
+            this.onDone = onDone;
+        }
+
+        @Override
+        boolean renderTile(int fieldX, int fieldY) {
+            return world != null && game.placeHead(fieldX, fieldY);
+        }
+
+        @Override
+        String describe() {
+            return "Rendering board " + game.getId();
+        }
+
+        @Override
+        void done() {
+            blocksPerRedraw.record(getPlaced());
+            if (onDone != null) {
+                try {
+                    onDone.run();
+                } catch (RuntimeException ex) {
+                    plugin.getLogger().log(Level.SEVERE, "Error after rendering board " + game.getId(), ex);
+                }
+            }
+        }
+
+        @Override
+        void abort() {
+        }
+    }
+
+    /**
+     * Multiple boards that are rendered one after another as a single job
+     */
+    private final class BatchJob extends Job {
+
+        private final Deque<HeadsJob> parts;
+        private final int boardCount;
+        private final long totalTiles;
+        private final Runnable onDone;
+        private long finishedTiles;
+        private boolean started;
+
+        private BatchJob(Deque<HeadsJob> parts, CommandSender sender, Runnable onDone) {
+            super(sender);
+            this.parts = parts;
+            this.boardCount = parts.size();
+            long tiles = 0;
+            for (HeadsJob part : parts) {
+                tiles += part.width * part.height;
+            }
+            this.totalTiles = tiles;
+            this.onDone = onDone;
+        }
+
+        @Override
+        int render(int budget, long deadline) {
+            if (!started) {
+                started = true;
+                startReporting();
+            }
+            while (budget > 0 && !parts.isEmpty()) {
+                HeadsJob part = parts.peek();
+                if (renderJobs.get(part.game) != part) {
+                    // the board has been scheduled again or removed
+                    parts.poll();
+                    finishedTiles += part.width * part.height;
+                    continue;
+                }
+                budget = part.render(budget, deadline);
+                if (!part.isDone()) {
+                    break;
+                }
+                parts.poll();
+                renderJobs.remove(part.game);
+                finishedTiles += part.width * part.height;
+                part.finish();
+            }
+            return budget;
+        }
+
+        @Override
+        boolean isDone() {
+            return parts.isEmpty();
+        }
+
+        @Override
+        int getProgress() {
+            long rendered = finishedTiles;
+            HeadsJob current = parts.peek();
+            if (current != null) {
+                rendered += current.getRendered();
+            }
+            return totalTiles == 0 ? 0 : (int) (rendered * 100 / totalTiles);
+        }
+
+        @Override
+        String describe() {
+            return "Rendering " + boardCount + " boards";
+        }
+
+        @Override
+        void done() {
+            if (onDone != null) {
+                try {
+                    onDone.run();
+                } catch (RuntimeException ex) {
+                    plugin.getLogger().log(Level.SEVERE, "Error after rendering " + boardCount + " boards", ex);
+                }
+            }
+        }
+
+        @Override
+        void abort() {
+        }
+    }
+
+    private final class AirJob extends RenderJob {
+
+        private final Set<Long> unloadedChunks;
+
+        private AirJob(HeadSweeperGame game, CommandSender sender) {
+            super(game, sender, null);
+            this.unloadedChunks = new LinkedHashSet<>();
+        }
+
+        @Override
+        boolean renderTile(int fieldX, int fieldY) {
+            if (world == null) {
+                return false;
+            }
+            int blockX = game.getX() + fieldX;
+            int blockZ = game.getZ() + fieldY;
+            if (!world.isChunkLoaded(blockX >> 4, blockZ >> 4)) {
+                unloadedChunks.add(BoardIndex.chunkKey(blockX >> 4, blockZ >> 4));
+                return false;
+            }
+            if (plugin.getController().getBoardIndex().getGameAt(world, blockX, game.getY(), blockZ) != null) {
+                return false;
+            }
+            world.getBlockAt(blockX, game.getY(), blockZ).setType(Material.AIR);
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "Clearing board " + game.getId();
+        }
+
+        @Override
+        void done() {
+            if (!unloadedChunks.isEmpty()) {
+                plugin.getController().addPendingClears(Collections.singletonList(
+                        new PendingClear(world.getUID(), game.getX(), game.getY(), game.getZ(), width, height, unloadedChunks)));
+                plugin.getPersister().requestSave();
+            }
+        }
+
+        @Override
+        void abort() {
+            if (world == null) {
+                return;
+            }
+            PendingClear remaining = PendingClear.ofBoard(game.toBoardData());
+            if (remaining != null) {
+                plugin.getController().addPendingClears(Collections.singletonList(remaining));
+            }
+        }
+    }
+
+    /**
+     * Walks the tiles of a field in square rings around a center tile, so
+     * that the tiles near the center come first. Each ring is split into the
+     * parts of its sides that lie on the field, so no tile outside the field
+     * is visited and no tiles have to be sorted up front.
+     */
+    private static final class TileOrder {
+
+        private final int width;
+        private final int height;
+        private final int centerX;
+        private final int centerY;
+        private final int lastRing;
+        private int ring;
+        private int side;
+        private boolean horizontal;
+        private int fixed;
+        private int position;
+        private int end;
+
+        private TileOrder(int width, int height, int centerX, int centerY) {
+            this.width = width;
+            this.height = height;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.lastRing = width * height == 0 ? -1
+                    : Math.max(Math.max(centerX, width - 1 - centerX), Math.max(centerY, height - 1 - centerY));
+            this.end = -1;
+        }
+
+        /**
+         * Get a new order with the same center, that starts at the first
+         * tile again
+         *
+         * @return the new order
+         */
+        TileOrder restart() {
+            return new TileOrder(width, height, centerX, centerY);
+        }
+
+        /**
+         * Get the next tile
+         *
+         * @return the index (y * width + x) of the tile, or -1 if all tiles
+         * have been visited
+         */
+        int next() {
+            while (position > end) {
+                if (!nextSide()) {
+                    return -1;
+                }
+            }
+            int tile = horizontal ? fixed * width + position : position * width + fixed;
+            position++;
+            return tile;
+        }
+
+        /**
+         * Move to the next side of a ring that has tiles on the field. The
+         * top and bottom sides include the corners of the ring.
+         *
+         * @return false if all rings have been visited
+         */
+        private boolean nextSide() {
+            while (ring <= lastRing) {
+                int currentRing = ring;
+                int currentSide = side;
+                if (currentRing == 0 || currentSide == 3) {
+                    ring++;
+                    side = 0;
+                } else {
+                    side++;
+                }
+                int start;
+                int stop;
+                int limit;
+                if (currentSide < 2) {
+                    horizontal = true;
+                    fixed = currentSide == 0 ? centerY - currentRing : centerY + currentRing;
+                    start = centerX - currentRing;
+                    stop = centerX + currentRing;
+                    limit = width;
+                    if (fixed < 0 || fixed >= height) {
+                        continue;
+                    }
+                } else {
+                    horizontal = false;
+                    fixed = currentSide == 2 ? centerX - currentRing : centerX + currentRing;
+                    start = centerY - currentRing + 1;
+                    stop = centerY + currentRing - 1;
+                    limit = height;
+                    if (fixed < 0 || fixed >= width) {
+                        continue;
+                    }
+                }
+                position = Math.max(0, start);
+                end = Math.min(limit - 1, stop);
+                if (position <= end) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
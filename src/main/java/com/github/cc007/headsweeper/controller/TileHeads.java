@@ -0,0 +1,75 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsplugin.api.business.domain.Head;
+import com.github.cc007.headsplugin.api.business.services.heads.HeadPlacer;
+import org.bukkit.Location;
+import org.bukkit.block.BlockFace;
+
+import java.util.Map;
+
+/**
+ * The heads of all tile states, resolved once, together with the head placer
+ * that places them. The heads are indexed by their {@link TileState} code, so
+ * placing a tile doesn't need any lookups.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class TileHeads {
+
+    private final Head[] heads;
+    private final HeadPlacer headPlacer;
+
+    public TileHeads(Head unknownHead, Head flagHead, Head bombHead, Map<Integer, Head> numberHeads, HeadPlacer headPlacer) {
+        this.heads = new Head[TileState.CODE_COUNT];
+        for (int number = 0; number <= 8; number++) {
+            heads[number] = numberHeads.get(number);
+        }
+        heads[TileState.BOMB] = bombHead;
+        heads[TileState.UNKNOWN] = unknownHead;
+        heads[TileState.FLAG] = flagHead;
+        this.headPlacer = headPlacer;
+    }
+
+    /**
+     * Get the head of a tile
+     *
+     * @param code the tile code
+     * @return the head
+     */
+    public Head getHead(byte code) {
+        return heads[code];
+    }
+
+    /**
+     * Place the head of a tile
+     *
+     * @param code the tile code
+     * @param location the location of the tile
+     */
+    public void place(byte code, Location location) {
+        headPlacer.placeHead(heads[code], location, BlockFace.NORTH);
+    }
+}
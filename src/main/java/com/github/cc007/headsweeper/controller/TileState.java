@@ -0,0 +1,86 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.mcsweeper.api.Field;
+
+/**
+ * Maps the states of a {@link Field} onto compact tile codes. Number tiles
+ * keep their own value (0-8), the bomb, unknown and flag states get the codes
+ * directly after that.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class TileState {
+
+    public static final byte NOT_RENDERED = -1;
+    public static final byte BOMB = 9;
+    public static final byte UNKNOWN = 10;
+    public static final byte FLAG = 11;
+    public static final int CODE_COUNT = 12;
+
+    private TileState() {
+    }
+
+    /**
+     * Get the tile code for a state of a {@link Field}
+     *
+     * @param state the field state
+     * @return the tile code
+     */
+    public static byte toCode(int state) {
+        if (state == Field.BOMB_STATE) {
+            return BOMB;
+        } else if (state == Field.UNKNOWN_STATE) {
+            return UNKNOWN;
+        } else if (state == Field.FLAG_STATE) {
+            return FLAG;
+        } else if (state >= 0 && state <= 8) {
+            return (byte) state;
+        }
+        throw new IllegalArgumentException("Unknown field state: " + state);
+    }
+
+    /**
+     * Get the state of a {@link Field} for a tile code
+     *
+     * @param code the tile code
+     * @return the field state
+     */
+    public static int toState(byte code) {
+        switch (code) {
+            case BOMB:
+                return Field.BOMB_STATE;
+            case UNKNOWN:
+                return Field.UNKNOWN_STATE;
+            case FLAG:
+                return Field.FLAG_STATE;
+            default:
+                if (code >= 0 && code <= 8) {
+                    return code;
+                }
+                throw new IllegalArgumentException("Unknown tile code: " + code);
+        }
+    }
+}
@@ -24,6 +24,7 @@
 package com.github.cc007.headsweeper.events;
 
 import java.util.Date;
+import java.util.UUID;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Event;
@@ -37,12 +38,32 @@ public class BoardCompletedEvent extends Event{
     
     private static final HandlerList HANDLERS = new HandlerList();
     private final Player player;
+    private final UUID playerId;
+    private final String playerName;
     private final int boardId;
     private final Location location;
     private final Date time;
 
     public BoardCompletedEvent(Player player, int boardId, Location location, Date time) {
+        this(player, player.getUniqueId(), player.getName(), boardId, location, time);
+    }
+
+    /**
+     * Create the event for a move that was made on another server, by a
+     * player that may not be online on this server
+     *
+     * @param player the player, or null if the player isn't online on this
+     * server
+     * @param playerId the UUID of the player
+     * @param playerName the name of the player
+     * @param boardId the game number of the board
+     * @param location the location of the tile that ended the game
+     * @param time the time at which the game ended
+     */
+    public BoardCompletedEvent(Player player, UUID playerId, String playerName, int boardId, Location location, Date time) {
         this.player = player;
+        this.playerId = playerId;
+        this.playerName = playerName;
         this.boardId = boardId;
         this.location = location;
         this.time = time;
@@ -52,6 +73,14 @@ public class BoardCompletedEvent extends Event{
         return player;
     }
 
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
     public int getBoardId() {
         return boardId;
     }
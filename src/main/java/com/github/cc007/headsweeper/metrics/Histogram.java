@@ -0,0 +1,148 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values, like latencies in nanoseconds
+ * or block counts. Like an HDR histogram, the values are counted in buckets
+ * whose width grows with the value: every power of two is split into 8
+ * buckets, so percentiles are accurate to within 12.5%. Values can be
+ * recorded from any thread.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    public Histogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(recorded));
+        count.increment();
+        sum.add(recorded);
+        max.accumulate(recorded);
+    }
+
+    /**
+     * Record the time that has passed since the given start time
+     *
+     * @param startNanos the start time, as returned by
+     * {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the recorded values
+     *
+     * @return the mean, or 0 if no values have been recorded
+     */
+    public double getMean() {
+        long recordedCount = count.sum();
+        return recordedCount == 0 ? 0 : (double) sum.sum() / recordedCount;
+    }
+
+    /**
+     * Get an upper bound of a percentile of the recorded values
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the largest value that can be in the bucket of the percentile,
+     * or 0 if no values have been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] = buckets.get(bucket);
+            total += counts[bucket];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= target) {
+                return Math.min(upperBound(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        long upper = ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
@@ -0,0 +1,158 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, histograms and gauges that describe how the plugin
+ * performs. Counters and histograms are lock-free, so they can be updated from
+ * any thread. Gauges are read when the metrics are shown or submitted.
+ * Callers on hot paths should look a metric up once and keep the reference.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class MetricsRegistry {
+
+    public static final String CLICK_TIME = "click.time";
+    public static final String CLICK_SWEEPS = "click.sweeps";
+    public static final String CLICK_FLAGS = "click.flags";
+    public static final String CLICK_THROTTLED = "click.throttled";
+    public static final String SAVE_SNAPSHOT_TIME = "save.snapshot-time";
+    public static final String SAVE_WRITE_TIME = "save.write-time";
+    public static final String SAVE_BYTES = "save.bytes";
+    public static final String JOURNAL_BYTES = "journal.bytes";
+    public static final String RENDER_TICK_TIME = "render.tick-time";
+    public static final String RENDER_BLOCKS = "render.blocks";
+    public static final String RENDER_BLOCKS_PER_REDRAW = "render.blocks-per-redraw";
+    public static final String UPDATE_TIME = "update.time";
+    public static final String RENDER_QUEUE = "queue.render";
+    public static final String UPDATE_QUEUE = "queue.update";
+    public static final String AUTO_RESET_QUEUE = "queue.auto-reset";
+    public static final String JOURNAL_QUEUE = "queue.journal-bytes";
+    public static final String BOARDS = "boards";
+    public static final String TILES = "tiles";
+    public static final String SYNC_PUBLISHED = "sync.published";
+    public static final String SYNC_APPLIED = "sync.applied";
+    public static final String SYNC_CONFLICTS = "sync.conflicts";
+    public static final String SYNC_QUEUE = "queue.sync";
+
+    private final Map<String, LongAdder> counters;
+    private final Map<String, Histogram> histograms;
+    private final Map<String, LongSupplier> gauges;
+
+    public MetricsRegistry() {
+        this.counters = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get a counter, creating it if it doesn't exist yet
+     *
+     * @param name the name of the counter
+     * @return the counter
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Get a histogram, creating it if it doesn't exist yet
+     *
+     * @param name the name of the histogram
+     * @return the histogram
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Register a gauge. A gauge with the same name is replaced.
+     *
+     * @param name the name of the gauge
+     * @param gauge the supplier of the current value, which can be called
+     * from any thread
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Get the current value of a counter
+     *
+     * @param name the name of the counter
+     * @return the value, or 0 if there is no counter with that name
+     */
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Get the current value of a gauge
+     *
+     * @param name the name of the gauge
+     * @return the value, or 0 if there is no gauge with that name
+     */
+    public long getGauge(String name) {
+        LongSupplier gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.getAsLong();
+    }
+
+    /**
+     * Get the current values of all counters, sorted by name
+     *
+     * @return the values of the counters
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        counters.forEach((name, counter) -> counts.put(name, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * Get the current values of all gauges, sorted by name
+     *
+     * @return the values of the gauges
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    /**
+     * Get all histograms, sorted by name
+     *
+     * @return the histograms
+     */
+    public Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+}
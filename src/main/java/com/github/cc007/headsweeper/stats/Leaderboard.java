@@ -0,0 +1,96 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.stats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * A sorted index of the statistics of the players, with at most one entry
+ * per player. The index is updated for every game that ends, so the top of
+ * the leaderboard can be looked up without sorting or touching the disk.
+ * The leaderboard is only used on the main thread.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class Leaderboard {
+
+    private final TreeSet<PlayerStats> sorted;
+    private final Map<UUID, PlayerStats> entries;
+
+    public Leaderboard(Comparator<PlayerStats> order) {
+        this.sorted = new TreeSet<>(order);
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * Add or replace the entry of a player
+     *
+     * @param stats the new statistics of the player
+     */
+    public void update(PlayerStats stats) {
+        PlayerStats previous = entries.put(stats.getPlayer(), stats);
+        if (previous != null) {
+            sorted.remove(previous);
+        }
+        sorted.add(stats);
+    }
+
+    /**
+     * Get the best entries of the leaderboard
+     *
+     * @param count the maximum number of entries
+     * @return the best entries, best first
+     */
+    public List<PlayerStats> top(int count) {
+        List<PlayerStats> top = new ArrayList<>(Math.min(count, sorted.size()));
+        Iterator<PlayerStats> iterator = sorted.iterator();
+        while (top.size() < count && iterator.hasNext()) {
+            top.add(iterator.next());
+        }
+        return top;
+    }
+
+    /**
+     * Get the rank of a player
+     *
+     * @param player the player
+     * @return the rank of the player, starting at 1, or 0 if the player isn't
+     * on the leaderboard
+     */
+    public int rank(UUID player) {
+        PlayerStats stats = entries.get(player);
+        return stats == null ? 0 : sorted.headSet(stats).size() + 1;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,146 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.stats;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * The statistics of a player on one type of board. A board type is the size
+ * and bomb count of a board, like 16x16/40. Instances are immutable, so that
+ * they can be handed to the writer thread as they are.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class PlayerStats {
+
+    /**
+     * Orders the statistics by their best clear time, fastest first.
+     * Statistics without a clear time come last.
+     */
+    public static final Comparator<PlayerStats> FASTEST = Comparator
+            .comparingLong((PlayerStats stats) -> stats.bestTime < 0 ? Long.MAX_VALUE : stats.bestTime)
+            .thenComparing(Comparator.comparingInt(PlayerStats::getWins).reversed())
+            .thenComparing(PlayerStats::getPlayer);
+
+    /**
+     * Orders the statistics by their number of wins, most wins first
+     */
+    public static final Comparator<PlayerStats> MOST_WINS = Comparator
+            .comparingInt((PlayerStats stats) -> stats.wins).reversed()
+            .thenComparingInt(PlayerStats::getLosses)
+            .thenComparing(PlayerStats::getPlayer);
+
+    private final UUID player;
+    private final String name;
+    private final String boardType;
+    private final int wins;
+    private final int losses;
+    private final long bestTime;
+
+    public PlayerStats(UUID player, String name, String boardType, int wins, int losses, long bestTime) {
+        this.player = player;
+        this.name = name;
+        this.boardType = boardType;
+        this.wins = wins;
+        this.losses = losses;
+        this.bestTime = bestTime;
+    }
+
+    /**
+     * Get the board type of a board
+     *
+     * @param width the width of the board
+     * @param height the height of the board
+     * @param bombCount the number of bombs of the board
+     * @return the board type, like 16x16/40
+     */
+    public static String boardType(int width, int height, int bombCount) {
+        return width + "x" + height + "/" + bombCount;
+    }
+
+    /**
+     * Get the statistics after the player has won another game
+     *
+     * @param name the current name of the player
+     * @param clearTime the time it took to clear the board in milliseconds,
+     * or -1 if it isn't known
+     * @return the new statistics
+     */
+    public PlayerStats withWin(String name, long clearTime) {
+        long newBestTime = clearTime >= 0 && (bestTime < 0 || clearTime < bestTime) ? clearTime : bestTime;
+        return new PlayerStats(player, name, boardType, wins + 1, losses, newBestTime);
+    }
+
+    /**
+     * Get the statistics after the player has lost another game
+     *
+     * @param name the current name of the player
+     * @return the new statistics
+     */
+    public PlayerStats withLoss(String name) {
+        return new PlayerStats(player, name, boardType, wins, losses + 1, bestTime);
+    }
+
+    /**
+     * Combine these statistics with the statistics of another board type
+     *
+     * @param other the other statistics of the same player
+     * @param boardType the board type of the combined statistics
+     * @return the combined statistics
+     */
+    public PlayerStats combine(PlayerStats other, String boardType) {
+        long newBestTime = bestTime < 0 ? other.bestTime : other.bestTime < 0 ? bestTime : Math.min(bestTime, other.bestTime);
+        return new PlayerStats(player, other.name, boardType, wins + other.wins, losses + other.losses, newBestTime);
+    }
+
+    public UUID getPlayer() {
+        return player;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBoardType() {
+        return boardType;
+    }
+
+    public int getWins() {
+        return wins;
+    }
+
+    public int getLosses() {
+        return losses;
+    }
+
+    /**
+     * Get the fastest time in which the player has cleared this type of board
+     *
+     * @return the best clear time in milliseconds, or -1 if there is none
+     */
+    public long getBestTime() {
+        return bestTime;
+    }
+}
@@ -0,0 +1,151 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.stats;
+
+import java.io.Closeable;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The SQLite database in which the statistics of the players are stored. The
+ * SQLite driver is part of the server, so it doesn't have to be shaded into
+ * the plugin. The database is only used on the writer thread of the
+ * {@link StatsTracker}.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class StatsDatabase implements Closeable {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS player_stats ("
+            + "player TEXT NOT NULL, "
+            + "name TEXT NOT NULL, "
+            + "board_type TEXT NOT NULL, "
+            + "wins INTEGER NOT NULL, "
+            + "losses INTEGER NOT NULL, "
+            + "best_time INTEGER NOT NULL, "
+            + "PRIMARY KEY (player, board_type))";
+    private static final String SELECT_ALL = "SELECT player, name, board_type, wins, losses, best_time FROM player_stats";
+    private static final String UPSERT = "INSERT OR REPLACE INTO player_stats (player, name, board_type, wins, losses, best_time) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final File file;
+    private Connection connection;
+
+    public StatsDatabase(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the database and create the table if it doesn't exist yet
+     *
+     * @throws SQLException if the database couldn't be opened
+     */
+    public void open() throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException ex) {
+            throw new SQLException("The SQLite driver isn't available", ex);
+        }
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(CREATE_TABLE);
+        }
+    }
+
+    /**
+     * Load the statistics of all players
+     *
+     * @return the statistics
+     * @throws SQLException if the statistics couldn't be read
+     */
+    public List<PlayerStats> loadAll() throws SQLException {
+        List<PlayerStats> stats = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery(SELECT_ALL)) {
+            while (result.next()) {
+                stats.add(new PlayerStats(
+                        UUID.fromString(result.getString(1)),
+                        result.getString(2),
+                        result.getString(3),
+                        result.getInt(4),
+                        result.getInt(5),
+                        result.getLong(6)));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Write the statistics in a single transaction. Existing statistics of
+     * the same player and board type are replaced.
+     *
+     * @param stats the statistics
+     * @throws SQLException if the statistics couldn't be written
+     */
+    public void write(Collection<PlayerStats> stats) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(UPSERT)) {
+            for (PlayerStats playerStats : stats) {
+                statement.setString(1, playerStats.getPlayer().toString());
+                statement.setString(2, playerStats.getName());
+                statement.setString(3, playerStats.getBoardType());
+                statement.setInt(4, playerStats.getWins());
+                statement.setInt(5, playerStats.getLosses());
+                statement.setLong(6, playerStats.getBestTime());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    public boolean isOpen() {
+        return connection != null;
+    }
+
+    @Override
+    public void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ex) {
+                // the connection is discarded anyway
+            }
+            connection = null;
+        }
+    }
+}
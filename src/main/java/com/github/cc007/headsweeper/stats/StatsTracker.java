@@ -0,0 +1,379 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.stats;
+
+import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.events.BoardCompletedEvent;
+import com.github.cc007.headsweeper.events.BoardExplodedEvent;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import com.github.cc007.mcsweeper.api.Sweeper;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Records the wins, losses and best clear times of the players when a board
+ * is completed or explodes, on this server or on another server that shares
+ * the board. All statistics are kept in memory, together with
+ * leaderboards that are updated for every game that ends, so that queries
+ * never touch the disk. Changed statistics are written to the
+ * {@link StatsDatabase} on a background thread. Changes that are made within
+ * the write window are combined into a single batch.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class StatsTracker implements Listener {
+
+    /**
+     * The board type of the statistics that are combined over all board
+     * types
+     */
+    public static final String ALL_BOARD_TYPES = "all";
+
+    private final HeadSweeper plugin;
+    private final StatsDatabase database;
+    private final long writeWindowTicks;
+    private final ExecutorService writer;
+    private final Map<UUID, Map<String, PlayerStats>> stats;
+    private final Map<UUID, PlayerStats> totals;
+    private final Map<String, UUID> playersByName;
+    private final Map<String, Leaderboard> fastest;
+    private final Leaderboard mostWins;
+    private final Map<String, PlayerStats> pendingWrites;
+    private final List<Result> pendingResults;
+    private BukkitTask pendingWrite;
+    private boolean loaded = false;
+
+    public StatsTracker(HeadSweeper plugin, File file, long writeWindowTicks) {
+        this.plugin = plugin;
+        this.database = new StatsDatabase(file);
+        this.writeWindowTicks = writeWindowTicks;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HeadSweeper-Stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stats = new HashMap<>();
+        this.totals = new HashMap<>();
+        this.playersByName = new HashMap<>();
+        this.fastest = new HashMap<>();
+        this.mostWins = new Leaderboard(PlayerStats.MOST_WINS);
+        this.pendingWrites = new LinkedHashMap<>();
+        this.pendingResults = new ArrayList<>();
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+    }
+
+    /**
+     * Open the database and load the statistics on the writer thread. Games
+     * that end before the statistics have been loaded are recorded once they
+     * are.
+     *
+     * @return the future that completes once the statistics have been loaded
+     */
+    public CompletableFuture<Void> load() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                database.open();
+                return database.loadAll();
+            } catch (SQLException ex) {
+                plugin.getLogger().log(Level.WARNING, "Couldn't open the statistics database, the statistics are only kept until the server stops", ex);
+                database.close();
+                return Collections.<PlayerStats>emptyList();
+            }
+        }, writer).thenAcceptAsync(this::registerStats, plugin.getMainThreadExecutor());
+    }
+
+    private void registerStats(List<PlayerStats> loadedStats) {
+        for (PlayerStats playerStats : loadedStats) {
+            stats.computeIfAbsent(playerStats.getPlayer(), player -> new HashMap<>()).put(playerStats.getBoardType(), playerStats);
+        }
+        for (PlayerStats playerStats : loadedStats) {
+            index(playerStats);
+        }
+        loaded = true;
+        for (Result result : pendingResults) {
+            record(result);
+        }
+        pendingResults.clear();
+        plugin.getLogger().log(Level.INFO, "Loaded the statistics of {0} players", stats.size());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBoardCompleted(BoardCompletedEvent event) {
+        gameEnded(event.getPlayerId(), event.getPlayerName(), event.getBoardId(), true, event.getTime().getTime());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onBoardExploded(BoardExplodedEvent event) {
+        gameEnded(event.getPlayerId(), event.getPlayerName(), event.getBoardId(), false, event.getTime().getTime());
+    }
+
+    private void gameEnded(UUID playerId, String playerName, int boardId, boolean won, long endTime) {
+        HeadSweeperGame game = plugin.getController().getGame(boardId);
+        if (playerId == null || game == null) {
+            return;
+        }
+        Sweeper sweeper = game.getGame();
+        int bombCount = SweeperEngine.of(sweeper).getBombCount(sweeper);
+        if (bombCount < 0) {
+            return;
+        }
+        String boardType = PlayerStats.boardType(sweeper.getField().getWidth(), sweeper.getField().getHeight(), bombCount);
+        long clearTime = won && game.getStartTime() > 0 ? Math.max(0, endTime - game.getStartTime()) : -1;
+        Result result = new Result(playerId, playerName, boardType, won, clearTime);
+        if (loaded) {
+            record(result);
+        } else {
+            pendingResults.add(result);
+        }
+    }
+
+    private void record(Result result) {
+        Map<String, PlayerStats> playerStats = stats.computeIfAbsent(result.player, player -> new HashMap<>());
+        PlayerStats current = playerStats.get(result.boardType);
+        if (current == null) {
+            current = new PlayerStats(result.player, result.name, result.boardType, 0, 0, -1);
+        }
+        PlayerStats updated = result.won ? current.withWin(result.name, result.clearTime) : current.withLoss(result.name);
+        playerStats.put(result.boardType, updated);
+        index(updated);
+        queueWrite(updated);
+    }
+
+    /**
+     * Update the leaderboards and the combined statistics of a player after
+     * the statistics of one board type have changed
+     */
+    private void index(PlayerStats playerStats) {
+        if (playerStats.getBestTime() >= 0) {
+            fastest.computeIfAbsent(playerStats.getBoardType(), boardType -> new Leaderboard(PlayerStats.FASTEST)).update(playerStats);
+        }
+        PlayerStats total = new PlayerStats(playerStats.getPlayer(), playerStats.getName(), ALL_BOARD_TYPES, 0, 0, -1);
+        for (PlayerStats boardTypeStats : stats.get(playerStats.getPlayer()).values()) {
+            total = total.combine(boardTypeStats, ALL_BOARD_TYPES);
+        }
+        total = new PlayerStats(total.getPlayer(), playerStats.getName(), ALL_BOARD_TYPES, total.getWins(), total.getLosses(), total.getBestTime());
+        totals.put(total.getPlayer(), total);
+        if (total.getWins() > 0) {
+            mostWins.update(total);
+        }
+        playersByName.put(playerStats.getName().toLowerCase(Locale.ROOT), playerStats.getPlayer());
+    }
+
+    private void queueWrite(PlayerStats playerStats) {
+        pendingWrites.put(playerStats.getPlayer() + "/" + playerStats.getBoardType(), playerStats);
+        if (pendingWrite == null) {
+            pendingWrite = Bukkit.getScheduler().runTaskLater(plugin, this::flush, Math.max(1, writeWindowTicks));
+        }
+    }
+
+    /**
+     * Hand the statistics that changed since the last write to the writer
+     * thread. This method has to be called on the main thread.
+     */
+    public void flush() {
+        if (pendingWrite != null) {
+            pendingWrite.cancel();
+            pendingWrite = null;
+        }
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        List<PlayerStats> batch = new ArrayList<>(pendingWrites.values());
+        pendingWrites.clear();
+        writer.execute(() -> {
+            if (!database.isOpen()) {
+                return;
+            }
+            try {
+                database.write(batch);
+            } catch (SQLException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Couldn't write the statistics of " + batch.size() + " players", ex);
+            }
+        });
+    }
+
+    /**
+     * Write the pending statistics, close the database and wait for the
+     * writer thread to finish.
+     *
+     * @param timeoutMillis the maximum time to wait for the writes to finish
+     * @return true if all writes have finished, otherwise false
+     */
+    public boolean shutdown(long timeoutMillis) {
+        flush();
+        writer.execute(database::close);
+        writer.shutdown();
+        try {
+            if (writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        plugin.getLogger().log(Level.SEVERE, "Couldn't finish writing the statistics within " + timeoutMillis + "ms");
+        return false;
+    }
+
+    /**
+     * Check if the statistics have been loaded. Until then, the leaderboards
+     * are empty.
+     *
+     * @return true if the statistics have been loaded, otherwise false
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Get the statistics of a player per board type, most wins first
+     *
+     * @param player the player
+     * @return the statistics of the player
+     */
+    public List<PlayerStats> getStats(UUID player) {
+        Map<String, PlayerStats> playerStats = stats.get(player);
+        if (playerStats == null) {
+            return Collections.emptyList();
+        }
+        List<PlayerStats> sorted = new ArrayList<>(playerStats.values());
+        sorted.sort(Comparator.comparingInt(PlayerStats::getWins).reversed().thenComparing(PlayerStats::getBoardType));
+        return sorted;
+    }
+
+    /**
+     * Get the statistics of a player, combined over all board types
+     *
+     * @param player the player
+     * @return the combined statistics, or null if the player hasn't finished
+     * a game yet
+     */
+    public PlayerStats getTotal(UUID player) {
+        return totals.get(player);
+    }
+
+    /**
+     * Get the players that cleared a type of board the fastest
+     *
+     * @param boardType the board type, like 16x16/40
+     * @param count the maximum number of players
+     * @return the statistics of the fastest players, fastest first
+     */
+    public List<PlayerStats> getFastest(String boardType, int count) {
+        Leaderboard leaderboard = fastest.get(boardType);
+        return leaderboard == null ? Collections.emptyList() : leaderboard.top(count);
+    }
+
+    /**
+     * Get the rank of a player on the leaderboard of the fastest clear times
+     * of a type of board
+     *
+     * @param boardType the board type
+     * @param player the player
+     * @return the rank, starting at 1, or 0 if the player hasn't cleared this
+     * type of board
+     */
+    public int getFastestRank(String boardType, UUID player) {
+        Leaderboard leaderboard = fastest.get(boardType);
+        return leaderboard == null ? 0 : leaderboard.rank(player);
+    }
+
+    /**
+     * Get the players with the most wins over all board types
+     *
+     * @param count the maximum number of players
+     * @return the combined statistics of the players, most wins first
+     */
+    public List<PlayerStats> getMostWins(int count) {
+        return mostWins.top(count);
+    }
+
+    /**
+     * Get the rank of a player on the leaderboard of the most wins
+     *
+     * @param player the player
+     * @return the rank, starting at 1, or 0 if the player hasn't won a game
+     */
+    public int getMostWinsRank(UUID player) {
+        return mostWins.rank(player);
+    }
+
+    /**
+     * Get the board types that have a leaderboard of clear times
+     *
+     * @return the board types, sorted by name
+     */
+    public List<String> getBoardTypes() {
+        return new ArrayList<>(new TreeSet<>(fastest.keySet()));
+    }
+
+    /**
+     * Find a player that has finished a game by their last known name
+     *
+     * @param name the name of the player, ignoring case
+     * @return the player, or null if no player with that name has finished
+     * a game
+     */
+    public UUID findPlayer(String name) {
+        return playersByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    private static final class Result {
+
+        private final UUID player;
+        private final String name;
+        private final String boardType;
+        private final boolean won;
+        private final long clearTime;
+
+        private Result(UUID player, String name, String boardType, boolean won, long clearTime) {
+            this.player = player;
+            this.name = name;
+            this.boardType = boardType;
+            this.won = won;
+            this.clearTime = clearTime;
+        }
+    }
+}
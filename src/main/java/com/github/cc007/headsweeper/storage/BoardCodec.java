@@ -0,0 +1,519 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.github.cc007.headsweeper.controller.TileState;
+import com.github.cc007.headsweeper.sweeper.PackedSweeper;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes the binary format of sweeperGames.dat.
+ * <p>
+ * The file starts with a header that contains the format version, the
+ * generation of the snapshot and the number of boards. Every board is stored
+ * as a length prefixed record with:
+ * <ul>
+ * <li>its id</li>
+ * <li>its coordinates and the UID of its world</li>
+ * <li>its size</li>
+ * <li>its auto reset delay</li>
+ * <li>its sync version</li>
+ * <li>the heads that were last placed in the world (4 bits per tile)</li>
+ * <li>the state of its sweeper game: compressed json for MCSweeper games, or
+ * the mine bitset and the tiles (4 bits per tile) for packed games</li>
+ * </ul>
+ * The boards are followed by the areas of deleted boards that still have to
+ * be cleared.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class BoardCodec {
+
+    private static final int MAGIC = 0x48535750;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final byte ENGINE_MCSWEEPER = 0;
+    private static final byte ENGINE_PACKED = 1;
+    private static final int NOT_RENDERED_NIBBLE = 0xF;
+
+    private BoardCodec() {
+    }
+
+    /**
+     * A snapshot of all boards, as stored in sweeperGames.dat
+     */
+    public static final class Snapshot {
+
+        private final long generation;
+        private final List<BoardData> boards;
+        private final List<PendingClear> pendingClears;
+
+        public Snapshot(long generation, List<BoardData> boards, List<PendingClear> pendingClears) {
+            this.generation = generation;
+            this.boards = boards;
+            this.pendingClears = pendingClears;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public List<BoardData> getBoards() {
+            return boards;
+        }
+
+        public List<PendingClear> getPendingClears() {
+            return pendingClears;
+        }
+    }
+
+    /**
+     * Encode a snapshot of all boards
+     *
+     * @param generation the generation of the snapshot
+     * @param boards the boards
+     * @param pendingClears the areas of deleted boards that still have to be
+     * cleared
+     * @return the encoded snapshot, ready to be written
+     */
+    public static ByteBuffer encode(long generation, List<BoardData> boards, List<PendingClear> pendingClears) {
+        List<byte[]> records = new ArrayList<>(boards.size());
+        int size = HEADER_SIZE + 4;
+        for (BoardData board : boards) {
+            byte[] record = encodeBoard(board);
+            records.add(record);
+            size += 4 + record.length;
+        }
+        for (PendingClear pendingClear : pendingClears) {
+            size += 40 + 8 * pendingClear.getChunks().size();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(records.size());
+        for (byte[] record : records) {
+            buffer.putInt(record.length).put(record);
+        }
+        buffer.putInt(pendingClears.size());
+        for (PendingClear pendingClear : pendingClears) {
+            UUID worldId = pendingClear.getWorldId();
+            buffer.putLong(worldId.getMostSignificantBits()).putLong(worldId.getLeastSignificantBits());
+            buffer.putInt(pendingClear.getX()).putInt(pendingClear.getY()).putInt(pendingClear.getZ());
+            buffer.putInt(pendingClear.getWidth()).putInt(pendingClear.getHeight());
+            buffer.putInt(pendingClear.getChunks().size());
+            for (long chunk : pendingClear.getChunks()) {
+                buffer.putLong(chunk);
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * The header of sweeperGames.dat
+     */
+    public static final class Header {
+
+        private final long generation;
+        private final int boardCount;
+
+        public Header(long generation, int boardCount) {
+            this.generation = generation;
+            this.boardCount = boardCount;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public int getBoardCount() {
+            return boardCount;
+        }
+    }
+
+    /**
+     * Read the header of an encoded snapshot
+     *
+     * @param buffer the encoded snapshot, positioned at the start
+     * @return the header
+     * @throws IOException if the data isn't a valid snapshot
+     */
+    public static Header readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a HeadSweeper board file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported board file version " + version);
+        }
+        return new Header(buffer.getLong(), buffer.getInt());
+    }
+
+    /**
+     * Get the next board record of an encoded snapshot, without decoding it
+     *
+     * @param buffer the encoded snapshot, positioned at the start of a record
+     * @return the encoded board
+     * @throws IOException if the record is incomplete
+     */
+    public static ByteBuffer nextRecord(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Incomplete board record");
+        }
+        ByteBuffer record = buffer.slice();
+        ((Buffer) record).limit(length);
+        ((Buffer) buffer).position(buffer.position() + length);
+        return record;
+    }
+
+    /**
+     * Decode a snapshot of all boards
+     *
+     * @param buffer the encoded snapshot
+     * @return the snapshot
+     * @throws IOException if the data isn't a valid snapshot
+     */
+    public static Snapshot decode(ByteBuffer buffer) throws IOException {
+        Header header = readHeader(buffer);
+        List<BoardData> boards = new ArrayList<>(header.getBoardCount());
+        for (int i = 0; i < header.getBoardCount(); i++) {
+            boards.add(decodeBoard(nextRecord(buffer)));
+        }
+        return new Snapshot(header.getGeneration(), boards, decodePendingClears(buffer));
+    }
+
+    /**
+     * Decode the areas of deleted boards that still have to be cleared
+     *
+     * @param buffer the encoded snapshot, positioned after the last board
+     * record
+     * @return the areas that still have to be cleared
+     * @throws IOException if the data is incomplete
+     */
+    public static List<PendingClear> decodePendingClears(ByteBuffer buffer) throws IOException {
+        List<PendingClear> pendingClears = new ArrayList<>();
+        try {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                UUID worldId = new UUID(buffer.getLong(), buffer.getLong());
+                int x = buffer.getInt();
+                int y = buffer.getInt();
+                int z = buffer.getInt();
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                int chunkCount = buffer.getInt();
+                List<Long> chunks = new ArrayList<>(chunkCount);
+                for (int j = 0; j < chunkCount; j++) {
+                    chunks.add(buffer.getLong());
+                }
+                pendingClears.add(new PendingClear(worldId, x, y, z, width, height, chunks));
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Incomplete pending clears", ex);
+        }
+        return pendingClears;
+    }
+
+    /**
+     * Encode a single board
+     *
+     * @param board the board
+     * @return the encoded board
+     */
+    public static byte[] encodeBoard(BoardData board) {
+        byte[] gameState = encodeGameState(board.getGameState());
+        byte[] renderedStates = board.getRenderedStates();
+        boolean rendered = renderedStates != null && renderedStates.length == board.getWidth() * board.getHeight();
+        int tileBytes = rendered ? (renderedStates.length + 1) / 2 : 0;
+        UUID worldId = board.getWorldId();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 12 + 16 + 8 + 4 + 8 + 1 + tileBytes + gameState.length);
+        buffer.putInt(board.getId());
+        buffer.putInt(board.getX()).putInt(board.getY()).putInt(board.getZ());
+        buffer.putLong(worldId.getMostSignificantBits()).putLong(worldId.getLeastSignificantBits());
+        buffer.putInt(board.getWidth()).putInt(board.getHeight());
+        buffer.putInt(board.getAutoResetDelay());
+        buffer.putLong(board.getSyncVersion());
+        buffer.put((byte) (rendered ? 1 : 0));
+        if (rendered) {
+            packTiles(renderedStates, buffer);
+        }
+        buffer.put(gameState);
+        return buffer.array();
+    }
+
+    /**
+     * Decode a single board
+     *
+     * @param buffer the encoded board
+     * @return the board
+     * @throws IOException if the data isn't a valid board
+     */
+    public static BoardData decodeBoard(ByteBuffer buffer) throws IOException {
+        try {
+            int id = buffer.getInt();
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            int z = buffer.getInt();
+            UUID worldId = new UUID(buffer.getLong(), buffer.getLong());
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int autoResetDelay = buffer.getInt();
+            long syncVersion = buffer.getLong();
+            byte[] renderedStates = null;
+            if (buffer.get() != 0) {
+                renderedStates = unpackTiles(buffer, width * height);
+            }
+            JsonObject gameState = decodeGameState(buffer);
+            return new BoardData.Builder()
+                    .id(id)
+                    .location(x, y, z)
+                    .worldId(worldId)
+                    .size(width, height)
+                    .gameState(gameState)
+                    .renderedStates(renderedStates)
+                    .autoResetDelay(autoResetDelay)
+                    .syncVersion(syncVersion)
+                    .build();
+        } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+            throw new IOException("Incomplete board record", ex);
+        }
+    }
+
+    /**
+     * Encode the state of a sweeper game
+     *
+     * @param gameState the serialized sweeper game
+     * @return the encoded state
+     */
+    public static byte[] encodeGameState(JsonObject gameState) {
+        if (SweeperEngine.of(gameState) == SweeperEngine.PACKED) {
+            return encodePackedGameState(gameState);
+        }
+        byte[] raw = gameState.toString().getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 16);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(chunk);
+            out.write(chunk, 0, length);
+        }
+        deflater.end();
+        byte[] compressed = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(9 + compressed.length);
+        buffer.put(ENGINE_MCSWEEPER).putInt(raw.length).putInt(compressed.length).put(compressed);
+        return buffer.array();
+    }
+
+    /**
+     * Decode the state of a sweeper game
+     *
+     * @param buffer the encoded state
+     * @return the serialized sweeper game
+     * @throws IOException if the data isn't a valid game state
+     */
+    public static JsonObject decodeGameState(ByteBuffer buffer) throws IOException {
+        byte engine = buffer.get();
+        if (engine == ENGINE_PACKED) {
+            return decodePackedGameState(buffer);
+        }
+        if (engine != ENGINE_MCSWEEPER) {
+            throw new IOException("Unknown sweeper engine " + engine);
+        }
+        byte[] raw;
+        byte[] compressed;
+        try {
+            raw = new byte[buffer.getInt()];
+            compressed = new byte[buffer.getInt()];
+            buffer.get(compressed);
+        } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+            throw new IOException("Truncated game state", ex);
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        try {
+            int offset = 0;
+            while (offset < raw.length && !inflater.finished()) {
+                int length = inflater.inflate(raw, offset, raw.length - offset);
+                if (length == 0 && inflater.needsInput()) {
+                    break;
+                }
+                offset += length;
+            }
+            if (offset != raw.length) {
+                throw new IOException("Truncated game state");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt game state", ex);
+        } finally {
+            inflater.end();
+        }
+        return new JsonParser().parse(new String(raw, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    /**
+     * Encode the state of a {@link PackedSweeper} game: its size, its bomb
+     * count, if it has been lost, its mine seed, if its mines have been
+     * placed, its mine bitset and its tiles (4 bits per tile)
+     */
+    private static byte[] encodePackedGameState(JsonObject gameState) {
+        int width = gameState.getAsJsonPrimitive(PackedSweeper.WIDTH_KEY).getAsInt();
+        int height = gameState.getAsJsonPrimitive(PackedSweeper.HEIGHT_KEY).getAsInt();
+        byte[] mines = Base64.getDecoder().decode(gameState.getAsJsonPrimitive(PackedSweeper.MINES_KEY).getAsString());
+        byte[] states = Base64.getDecoder().decode(gameState.getAsJsonPrimitive(PackedSweeper.STATES_KEY).getAsString());
+        long seed = gameState.getAsJsonPrimitive(PackedSweeper.SEED_KEY).getAsLong();
+        boolean generated = gameState.getAsJsonPrimitive(PackedSweeper.GENERATED_KEY).getAsBoolean();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 12 + 1 + 9 + 4 + mines.length + (states.length + 1) / 2);
+        buffer.put(ENGINE_PACKED);
+        buffer.putInt(width).putInt(height).putInt(gameState.getAsJsonPrimitive(PackedSweeper.BOMB_COUNT_KEY).getAsInt());
+        buffer.put((byte) (gameState.getAsJsonPrimitive(PackedSweeper.LOST_KEY).getAsBoolean() ? 1 : 0));
+        buffer.putLong(seed).put((byte) (generated ? 1 : 0));
+        buffer.putInt(mines.length).put(mines);
+        packTiles(states, buffer);
+        return buffer.array();
+    }
+
+    private static JsonObject decodePackedGameState(ByteBuffer buffer) throws IOException {
+        try {
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int bombCount = buffer.getInt();
+            boolean lost = buffer.get() != 0;
+            long seed = buffer.getLong();
+            boolean generated = buffer.get() != 0;
+            byte[] mines = new byte[buffer.getInt()];
+            buffer.get(mines);
+            byte[] states = unpackTiles(buffer, width * height);
+            JsonObject gameState = new JsonObject();
+            gameState.addProperty(PackedSweeper.ENGINE_KEY, PackedSweeper.ENGINE_NAME);
+            gameState.addProperty(PackedSweeper.WIDTH_KEY, width);
+            gameState.addProperty(PackedSweeper.HEIGHT_KEY, height);
+            gameState.addProperty(PackedSweeper.BOMB_COUNT_KEY, bombCount);
+            gameState.addProperty(PackedSweeper.LOST_KEY, lost);
+            gameState.addProperty(PackedSweeper.MINES_KEY, Base64.getEncoder().encodeToString(mines));
+            gameState.addProperty(PackedSweeper.STATES_KEY, Base64.getEncoder().encodeToString(states));
+            gameState.addProperty(PackedSweeper.SEED_KEY, seed);
+            gameState.addProperty(PackedSweeper.GENERATED_KEY, generated);
+            return gameState;
+        } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+            throw new IOException("Truncated game state", ex);
+        }
+    }
+
+    private static void packTiles(byte[] codes, ByteBuffer buffer) {
+        for (int i = 0; i < codes.length; i += 2) {
+            int low = toNibble(codes[i]);
+            int high = i + 1 < codes.length ? toNibble(codes[i + 1]) : NOT_RENDERED_NIBBLE;
+            buffer.put((byte) (low | high << 4));
+        }
+    }
+
+    private static byte[] unpackTiles(ByteBuffer buffer, int count) {
+        byte[] codes = new byte[count];
+        for (int i = 0; i < count; i += 2) {
+            int packed = buffer.get();
+            codes[i] = fromNibble(packed & 0xF);
+            if (i + 1 < count) {
+                codes[i + 1] = fromNibble(packed >> 4 & 0xF);
+            }
+        }
+        return codes;
+    }
+
+    private static int toNibble(byte code) {
+        return code == TileState.NOT_RENDERED ? NOT_RENDERED_NIBBLE : code;
+    }
+
+    private static byte fromNibble(int nibble) {
+        return nibble == NOT_RENDERED_NIBBLE || nibble >= TileState.CODE_COUNT ? TileState.NOT_RENDERED : (byte) nibble;
+    }
+
+    /**
+     * Read a snapshot from a file
+     *
+     * @param file the file
+     * @return the snapshot
+     * @throws IOException if the file couldn't be read or isn't valid
+     */
+    public static Snapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+            }
+            ((Buffer) buffer).flip();
+            return decode(buffer);
+        }
+    }
+
+    /**
+     * Write the data to a temporary file first and move it in place of the
+     * target file afterwards, so that the target file is never half written.
+     *
+     * @param target the file to write to
+     * @param data the data to write
+     * @throws IOException if the data couldn't be written
+     */
+    public static void writeAtomically(File target, ByteBuffer data) throws IOException {
+        Path targetPath = target.toPath();
+        Path tempPath = targetPath.resolveSibling(target.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import com.github.cc007.mcsweeper.api.Sweeper;
+
+import com.google.gson.JsonObject;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * The stored state of a minesweeper board, independent of the world it is
+ * placed in. Boards are created with a {@link Builder}.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BoardData {
+
+    private final int id;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final UUID worldId;
+    private final String worldName;
+    private final int width;
+    private final int height;
+    private final Supplier<JsonObject> gameState;
+    private final byte[] renderedStates;
+    private final int autoResetDelay;
+    private final long syncVersion;
+
+    private BoardData(Builder builder) {
+        this.id = builder.id;
+        this.x = builder.x;
+        this.y = builder.y;
+        this.z = builder.z;
+        this.worldId = builder.worldId;
+        this.worldName = builder.worldName;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.gameState = builder.gameState;
+        this.renderedStates = builder.renderedStates;
+        this.autoResetDelay = builder.autoResetDelay;
+        this.syncVersion = builder.syncVersion;
+    }
+
+    /**
+     * Builds a {@link BoardData}. Fields that aren't set keep their default:
+     * no id (-1), an unknown world and size, no rendered heads, the
+     * configured auto reset delay (-1) and sync version 0.
+     */
+    public static final class Builder {
+
+        private int id = -1;
+        private int x;
+        private int y;
+        private int z;
+        private UUID worldId;
+        private String worldName;
+        private int width;
+        private int height;
+        private Supplier<JsonObject> gameState;
+        private byte[] renderedStates;
+        private int autoResetDelay = -1;
+        private long syncVersion;
+
+        public Builder id(int id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder location(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            return this;
+        }
+
+        public Builder worldId(UUID worldId) {
+            this.worldId = worldId;
+            return this;
+        }
+
+        public Builder worldName(String worldName) {
+            this.worldName = worldName;
+            return this;
+        }
+
+        public Builder size(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Builder gameState(JsonObject gameState) {
+            this.gameState = () -> gameState;
+            return this;
+        }
+
+        /**
+         * Set the serialized state of the sweeper game, to be serialized when
+         * the board is encoded
+         *
+         * @param gameState the supplier of the serialized state, as returned
+         * by {@link SweeperEngine#serializeLater(Sweeper)}
+         * @return this builder
+         */
+        public Builder gameState(Supplier<JsonObject> gameState) {
+            this.gameState = gameState;
+            return this;
+        }
+
+        public Builder renderedStates(byte[] renderedStates) {
+            this.renderedStates = renderedStates;
+            return this;
+        }
+
+        public Builder autoResetDelay(int autoResetDelay) {
+            this.autoResetDelay = autoResetDelay;
+            return this;
+        }
+
+        public Builder syncVersion(long syncVersion) {
+            this.syncVersion = syncVersion;
+            return this;
+        }
+
+        public BoardData build() {
+            return new BoardData(this);
+        }
+    }
+
+    /**
+     * Read the board from the json format of sweeperGames.json
+     *
+     * @param input the json object of the board
+     * @return the board
+     */
+    public static BoardData fromJson(JsonObject input) {
+        Builder builder = new Builder()
+                .location(input.getAsJsonPrimitive("x").getAsInt(), input.getAsJsonPrimitive("y").getAsInt(), input.getAsJsonPrimitive("z").getAsInt())
+                .gameState(input.getAsJsonObject("game"));
+        if (input.has("id")) {
+            builder.id(input.getAsJsonPrimitive("id").getAsInt());
+        }
+        if (input.has("autoResetDelay")) {
+            builder.autoResetDelay(input.getAsJsonPrimitive("autoResetDelay").getAsInt());
+        }
+        if (input.has("syncVersion")) {
+            builder.syncVersion(input.getAsJsonPrimitive("syncVersion").getAsLong());
+        }
+        String world = input.getAsJsonPrimitive("world").getAsString();
+        try {
+            builder.worldId(UUID.fromString(world));
+        } catch (IllegalArgumentException e) {
+            // older versions stored the name of the world
+            builder.worldName(world);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the id of the board
+     *
+     * @return the id of the board, or -1 if the board was stored without an
+     * id
+     */
+    public int getId() {
+        return id;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Get the UID of the world
+     *
+     * @return the UID of the world, or null if only the name of the world is
+     * known
+     */
+    public UUID getWorldId() {
+        return worldId;
+    }
+
+    /**
+     * Get the name of the world, for boards that were stored by name
+     *
+     * @return the name of the world, or null if the UID is known
+     */
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /**
+     * Get the width of the board
+     *
+     * @return the width of the board, or 0 if it is unknown
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the board
+     *
+     * @return the height of the board, or 0 if it is unknown
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the serialized state of the sweeper game
+     *
+     * @return the serialized state of the sweeper game
+     */
+    public JsonObject getGameState() {
+        return gameState.get();
+    }
+
+    /**
+     * Create the sweeper game from its serialized state
+     *
+     * @return the sweeper game
+     */
+    public Sweeper createGame() {
+        return createGame(getGameState());
+    }
+
+    /**
+     * Create a sweeper game from its serialized state
+     *
+     * @param gameState the serialized state of the sweeper game
+     * @return the sweeper game
+     */
+    public static Sweeper createGame(JsonObject gameState) {
+        return SweeperEngine.of(gameState).deserialize(gameState);
+    }
+
+    /**
+     * Get the tile codes of the heads that were last placed in the world
+     *
+     * @return the tile codes, or null if they are unknown
+     */
+    public byte[] getRenderedStates() {
+        return renderedStates;
+    }
+
+    /**
+     * Get the number of seconds after which the board is reset once it has
+     * been won or lost
+     *
+     * @return the delay in seconds, 0 if the board isn't reset automatically
+     * or -1 if the board uses the configured default
+     */
+    public int getAutoResetDelay() {
+        return autoResetDelay;
+    }
+
+    /**
+     * Get the number of moves and resets that have been done on the board,
+     * as used to keep the boards of multiple servers in sync
+     *
+     * @return the sync version of the board
+     */
+    public long getSyncVersion() {
+        return syncVersion;
+    }
+}
@@ -0,0 +1,315 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.github.cc007.mcsweeper.api.Sweeper;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the stored boards on background threads. The file is read one board
+ * at a time and every board is decoded and deserialized on the worker pool,
+ * after which the journal is replayed on top of the loaded boards. Binding
+ * the boards to their worlds is left to the main thread. If the journal can't
+ * be replayed completely, loading fails and the stored files are left as they
+ * are.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class GameLoader {
+
+    private final Logger logger;
+    private final File dataFile;
+    private final File jsonFile;
+    private final MoveJournal journal;
+    private final Executor workers;
+
+    public GameLoader(Logger logger, File dataFile, File jsonFile, MoveJournal journal, Executor workers) {
+        this.logger = logger;
+        this.dataFile = dataFile;
+        this.jsonFile = jsonFile;
+        this.journal = journal;
+        this.workers = workers;
+    }
+
+    /**
+     * A board that has been loaded, but isn't bound to its world yet
+     */
+    public static final class LoadedBoard {
+
+        private final int id;
+        private final BoardData data;
+        private final Sweeper game;
+        private long syncVersion;
+
+        public LoadedBoard(int id, BoardData data, Sweeper game) {
+            this.id = id;
+            this.data = data;
+            this.game = game;
+            this.syncVersion = data.getSyncVersion();
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public BoardData getData() {
+            return data;
+        }
+
+        public Sweeper getGame() {
+            return game;
+        }
+
+        /**
+         * Get the sync version of the board, including the operations that
+         * were replayed from the journal
+         *
+         * @return the sync version
+         */
+        public long getSyncVersion() {
+            return syncVersion;
+        }
+    }
+
+    /**
+     * The result of loading the boards
+     */
+    public static final class Result {
+
+        private final long generation;
+        private final List<LoadedBoard> boards;
+        private final List<PendingClear> pendingClears;
+        private final boolean migrated;
+
+        public Result(long generation, List<LoadedBoard> boards, List<PendingClear> pendingClears, boolean migrated) {
+            this.generation = generation;
+            this.boards = boards;
+            this.pendingClears = pendingClears;
+            this.migrated = migrated;
+        }
+
+        /**
+         * Get the generation of the snapshot that the boards were loaded
+         * from
+         *
+         * @return the generation of the snapshot
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        public List<LoadedBoard> getBoards() {
+            return boards;
+        }
+
+        /**
+         * Get the areas of deleted boards that still have to be cleared
+         *
+         * @return the areas that still have to be cleared
+         */
+        public List<PendingClear> getPendingClears() {
+            return pendingClears;
+        }
+
+        /**
+         * Get if the boards were loaded from the old json format
+         *
+         * @return true if the boards were loaded from sweeperGames.json
+         */
+        public boolean isMigrated() {
+            return migrated;
+        }
+    }
+
+    private static final class PendingBoards {
+
+        private long generation;
+        private final List<CompletableFuture<LoadedBoard>> boards = new ArrayList<>();
+        private final List<PendingClear> pendingClears = new ArrayList<>();
+        private boolean migrated;
+    }
+
+    /**
+     * Load the boards and replay the journal
+     *
+     * @return a future that completes with the loaded boards, or
+     * exceptionally if the boards couldn't be read or the journal couldn't be
+     * replayed
+     */
+    public CompletableFuture<Result> load() {
+        return CompletableFuture.supplyAsync(this::readBoards, workers)
+                .thenCompose(pending -> CompletableFuture.allOf(pending.boards.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(ignored -> replay(pending), workers));
+    }
+
+    private PendingBoards readBoards() {
+        PendingBoards pending = new PendingBoards();
+        try {
+            if (dataFile.exists()) {
+                readDataFile(pending);
+            } else if (jsonFile.exists()) {
+                logger.log(Level.INFO, "Migrating sweeperGames.json to sweeperGames.dat...");
+                readJsonFile(pending);
+                pending.migrated = true;
+            } else {
+                logger.log(Level.INFO, "First use of this plugin: generate sweeperGames.dat");
+            }
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+        return pending;
+    }
+
+    private void readDataFile(PendingBoards pending) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of " + dataFile.getName());
+                }
+            }
+        }
+        ((Buffer) buffer).flip();
+        BoardCodec.Header header = BoardCodec.readHeader(buffer);
+        pending.generation = header.getGeneration();
+        for (int i = 0; i < header.getBoardCount(); i++) {
+            ByteBuffer record = BoardCodec.nextRecord(buffer);
+            pending.boards.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    BoardData data = BoardCodec.decodeBoard(record);
+                    return new LoadedBoard(data.getId(), data, data.createGame());
+                } catch (IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, workers));
+        }
+        pending.pendingClears.addAll(BoardCodec.decodePendingClears(buffer));
+    }
+
+    private void readJsonFile(PendingBoards pending) throws IOException {
+        if (jsonFile.length() == 0) {
+            return;
+        }
+        JsonParser parser = new JsonParser();
+        try (Reader fileReader = Files.newBufferedReader(jsonFile.toPath(), StandardCharsets.UTF_8);
+                JsonReader reader = new JsonReader(fileReader)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("sweeperGames".equals(reader.nextName())) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        JsonObject board = parser.parse(reader).getAsJsonObject();
+                        int position = pending.boards.size();
+                        pending.boards.add(CompletableFuture.supplyAsync(() -> {
+                            BoardData data = BoardData.fromJson(board);
+                            return new LoadedBoard(position, data, data.createGame());
+                        }, workers));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    private Result replay(PendingBoards pending) {
+        Map<Integer, LoadedBoard> boards = new TreeMap<>();
+        for (CompletableFuture<LoadedBoard> future : pending.boards) {
+            LoadedBoard board = future.join();
+            boards.put(board.getId(), board);
+        }
+        try {
+            int operations = journal.replay(pending.generation, new MoveJournal.Handler() {
+                @Override
+                public void create(int board, BoardData data) {
+                    boards.put(board, new LoadedBoard(board, data, data.createGame()));
+                }
+
+                @Override
+                public void sweep(int board, int x, int y) {
+                    LoadedBoard loadedBoard = boards.get(board);
+                    loadedBoard.getGame().sweep(x, y);
+                    loadedBoard.syncVersion++;
+                }
+
+                @Override
+                public void flag(int board, int x, int y) {
+                    LoadedBoard loadedBoard = boards.get(board);
+                    loadedBoard.getGame().flag(x, y);
+                    loadedBoard.syncVersion++;
+                }
+
+                @Override
+                public void reset(int board, JsonObject game) {
+                    LoadedBoard previous = boards.get(board);
+                    LoadedBoard loadedBoard = new LoadedBoard(board, previous.getData(), BoardData.createGame(game));
+                    loadedBoard.syncVersion = previous.syncVersion + 1;
+                    boards.put(board, loadedBoard);
+                }
+
+                @Override
+                public void delete(int board) {
+                    PendingClear pendingClear = PendingClear.ofBoard(boards.remove(board).getData());
+                    if (pendingClear != null) {
+                        pending.pendingClears.add(pendingClear);
+                    }
+                }
+
+                @Override
+                public void syncVersion(int board, long version) {
+                    boards.get(board).syncVersion = version;
+                }
+            });
+            logger.log(Level.INFO, "Replayed {0} operations from sweeperGames.journal", operations);
+        } catch (IOException | RuntimeException ex) {
+            throw new CompletionException(new IOException("Couldn't replay sweeperGames.journal", ex));
+        }
+        return new Result(pending.generation, new ArrayList<>(boards.values()), pending.pendingClears, pending.migrated);
+    }
+}
@@ -0,0 +1,368 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.metrics.Histogram;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import com.github.cc007.mcsweeper.api.Sweeper;
+
+import com.google.gson.JsonObject;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Writes the state of the minesweeper boards to disk on a background thread.
+ * Every operation on a board is appended to a {@link MoveJournal}. Every so
+ * often the journal is compacted into a snapshot of all boards. Snapshot
+ * requests that are made within the save window are combined into a single
+ * write. The boards are captured on the main thread, but they are only
+ * serialized and encoded on the writer thread.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class GamePersister {
+
+    private final HeadSweeper plugin;
+    private final File file;
+    private final MoveJournal journal;
+    private final long saveWindowTicks;
+    private final int compactAfterOperations;
+    private final ExecutorService writer;
+    private final ByteArrayOutputStream pendingOperations;
+    private final DataOutputStream pendingOperationsOut;
+    private List<JournalPart> pendingParts;
+    private int pendingPartBytes;
+    private final Histogram snapshotTime;
+    private final Histogram writeTime;
+    private final LongAdder savedBytes;
+    private final LongAdder journalBytes;
+    private int operationsSinceSnapshot;
+    private long generation;
+    private BukkitTask pendingSave;
+    private BukkitTask pendingJournalFlush;
+
+    public GamePersister(HeadSweeper plugin, File file, File journalFile, long saveWindowTicks, int compactAfterOperations) {
+        this.plugin = plugin;
+        this.file = file;
+        this.journal = new MoveJournal(journalFile);
+        this.saveWindowTicks = saveWindowTicks;
+        this.compactAfterOperations = compactAfterOperations;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HeadSweeper-Persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingOperations = new ByteArrayOutputStream();
+        this.snapshotTime = plugin.getMetricsRegistry().histogram(MetricsRegistry.SAVE_SNAPSHOT_TIME);
+        this.writeTime = plugin.getMetricsRegistry().histogram(MetricsRegistry.SAVE_WRITE_TIME);
+        this.savedBytes = plugin.getMetricsRegistry().counter(MetricsRegistry.SAVE_BYTES);
+        this.journalBytes = plugin.getMetricsRegistry().counter(MetricsRegistry.JOURNAL_BYTES);
+        this.pendingOperationsOut = new DataOutputStream(pendingOperations);
+        this.pendingParts = new ArrayList<>();
+    }
+
+    /**
+     * Get the journal that belongs to the snapshot
+     *
+     * @return the journal
+     */
+    public MoveJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Set the generation of the snapshot that has been loaded
+     *
+     * @param generation the generation of the loaded snapshot
+     */
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Record the creation of a game. The game is captured now, but it is only
+     * encoded on the writer thread.
+     *
+     * @param gameNr the game number
+     * @param game the game that has been created
+     */
+    public void recordCreate(int gameNr, HeadSweeperGame game) {
+        BoardData data = game.toBoardData();
+        endPendingOperations();
+        pendingParts.add(out -> MoveJournal.writeCreate(out, gameNr, data));
+        operationRecorded();
+    }
+
+    public void recordSweep(int gameNr, int x, int y) {
+        try {
+            MoveJournal.writeSweep(pendingOperationsOut, gameNr, x, y);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        operationRecorded();
+    }
+
+    public void recordFlag(int gameNr, int x, int y) {
+        try {
+            MoveJournal.writeFlag(pendingOperationsOut, gameNr, x, y);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        operationRecorded();
+    }
+
+    public void recordReset(int gameNr, Sweeper game) {
+        try {
+            MoveJournal.writeReset(pendingOperationsOut, gameNr, game.serialize());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        operationRecorded();
+    }
+
+    /**
+     * Record a reset of a game
+     *
+     * @param gameNr the game number
+     * @param encodedGame the new state of the game, encoded with
+     * {@link BoardCodec#encodeGameState(JsonObject)}
+     */
+    public void recordReset(int gameNr, byte[] encodedGame) {
+        try {
+            MoveJournal.writeReset(pendingOperationsOut, gameNr, encodedGame);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        operationRecorded();
+    }
+
+    /**
+     * Record that the sync version of a game has been set to a version that
+     * doesn't follow from its moves, because the state of another server has
+     * been adopted
+     *
+     * @param gameNr the game number
+     * @param version the new sync version
+     */
+    public void recordSyncVersion(int gameNr, long version) {
+        try {
+            MoveJournal.writeSyncVersion(pendingOperationsOut, gameNr, version);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        operationRecorded();
+    }
+
+    public void recordDelete(int gameNr) {
+        try {
+            MoveJournal.writeDelete(pendingOperationsOut, gameNr);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        operationRecorded();
+    }
+
+    private void operationRecorded() {
+        operationsSinceSnapshot++;
+        if (operationsSinceSnapshot >= compactAfterOperations) {
+            requestSave();
+        }
+        if (pendingJournalFlush == null) {
+            pendingJournalFlush = Bukkit.getScheduler().runTask(plugin, this::flushJournal);
+        }
+    }
+
+    /**
+     * Move the operations that have been encoded so far to the pending parts,
+     * so that a part that is encoded later keeps its place in the journal
+     */
+    private void endPendingOperations() {
+        if (pendingOperations.size() == 0) {
+            return;
+        }
+        byte[] operations = pendingOperations.toByteArray();
+        pendingOperations.reset();
+        pendingPartBytes += operations.length;
+        pendingParts.add(out -> out.write(operations));
+    }
+
+    /**
+     * Hand the operations that were recorded since the last call to the
+     * writer thread, so that they are appended to the journal in one write.
+     */
+    public void flushJournal() {
+        if (pendingJournalFlush != null) {
+            pendingJournalFlush.cancel();
+            pendingJournalFlush = null;
+        }
+        endPendingOperations();
+        if (pendingParts.isEmpty()) {
+            return;
+        }
+        List<JournalPart> parts = pendingParts;
+        pendingParts = new ArrayList<>();
+        pendingPartBytes = 0;
+        writer.execute(() -> {
+            try {
+                ByteArrayOutputStream operations = new ByteArrayOutputStream();
+                DataOutputStream operationsOut = new DataOutputStream(operations);
+                for (JournalPart part : parts) {
+                    part.writeTo(operationsOut);
+                }
+                journalBytes.add(operations.size());
+                journal.append(ByteBuffer.wrap(operations.toByteArray()));
+            } catch (IOException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Couldn't append to the journal", ex);
+            }
+        });
+    }
+
+    /**
+     * Get the number of bytes of operations that haven't been handed to the
+     * writer thread yet. Created games that are still waiting to be encoded
+     * aren't counted.
+     *
+     * @return the number of bytes
+     */
+    public int getPendingJournalBytes() {
+        return pendingOperations.size() + pendingPartBytes;
+    }
+
+    /**
+     * Request a snapshot of the boards to be saved. The save is done at the
+     * end of the save window, together with all other requests made in that
+     * window.
+     */
+    public void requestSave() {
+        if (pendingSave != null) {
+            return;
+        }
+        if (saveWindowTicks > 0) {
+            pendingSave = Bukkit.getScheduler().runTaskLater(plugin, this::flush, saveWindowTicks);
+        } else {
+            pendingSave = Bukkit.getScheduler().runTask(plugin, this::flush);
+        }
+    }
+
+    /**
+     * Take a snapshot of the boards and hand it to the writer thread. Once the
+     * snapshot has been written, the journal is emptied. This method has to be
+     * called on the main thread.
+     */
+    public void flush() {
+        if (pendingSave != null) {
+            pendingSave.cancel();
+            pendingSave = null;
+        }
+        if (!plugin.isLoaded()) {
+            return;
+        }
+        long start = System.nanoTime();
+        flushJournal();
+        List<BoardData> snapshot = plugin.getController().snapshot();
+        List<PendingClear> pendingClears = plugin.getController().snapshotPendingClears();
+        long snapshotGeneration = ++generation;
+        operationsSinceSnapshot = 0;
+        snapshotTime.recordSince(start);
+        writer.execute(() -> {
+            long writeStart = System.nanoTime();
+            try {
+                ByteBuffer encoded = BoardCodec.encode(snapshotGeneration, snapshot, pendingClears);
+                savedBytes.add(encoded.remaining());
+                BoardCodec.writeAtomically(file, encoded);
+            } catch (IOException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Couldn't write to " + file.getName(), ex);
+                return;
+            } finally {
+                writeTime.recordSince(writeStart);
+            }
+            try {
+                journal.reset(snapshotGeneration);
+            } catch (IOException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Couldn't reset the journal", ex);
+            }
+        });
+    }
+
+    /**
+     * Run a task on the writer thread after all writes that have been
+     * requested so far
+     *
+     * @param task the task to run
+     */
+    public void runAfterWrites(Runnable task) {
+        writer.execute(task);
+    }
+
+    /**
+     * Write the current state of the boards and wait for the writer thread to
+     * finish.
+     *
+     * @param timeoutMillis the maximum time to wait for the writes to finish
+     * @return true if all writes have finished, otherwise false
+     */
+    public boolean shutdown(long timeoutMillis) {
+        flush();
+        writer.execute(() -> {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                plugin.getLogger().log(Level.WARNING, "Couldn't close the journal", ex);
+            }
+        });
+        writer.shutdown();
+        try {
+            if (writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        plugin.getLogger().log(Level.SEVERE, "Couldn't finish writing " + file.getName() + " within " + timeoutMillis + "ms");
+        return false;
+    }
+
+    /**
+     * Operations that are written to the journal on the writer thread
+     */
+    private interface JournalPart {
+
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,101 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.github.cc007.headsplugin.api.business.domain.Head;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local copy of the heads that are used for the tiles, so that they don't
+ * have to be looked up in the heads database on every start.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class HeadCache {
+
+    private final File file;
+    private final Logger logger;
+    private final Gson gson;
+
+    public HeadCache(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        this.gson = new Gson();
+    }
+
+    /**
+     * Read the cached heads
+     *
+     * @return the heads by their name, or null if there is no usable cache
+     */
+    public Map<String, Head> read() {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            JsonObject input = new JsonParser().parse(json).getAsJsonObject();
+            Map<String, Head> heads = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : input.entrySet()) {
+                heads.put(entry.getKey(), gson.fromJson(entry.getValue(), Head.class));
+            }
+            return heads;
+        } catch (IOException | JsonParseException | IllegalStateException ex) {
+            logger.log(Level.WARNING, "Couldn't read the cached heads from " + file.getName(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Write the heads to the cache
+     *
+     * @param heads the heads by their name
+     */
+    public void write(Map<String, Head> heads) {
+        JsonObject output = new JsonObject();
+        for (Map.Entry<String, Head> entry : heads.entrySet()) {
+            output.add(entry.getKey(), gson.toJsonTree(entry.getValue()));
+        }
+        try {
+            BoardCodec.writeAtomically(file, ByteBuffer.wrap(output.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Couldn't write the cached heads to " + file.getName(), ex);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.google.gson.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only journal of the operations that were done on the minesweeper
+ * boards since the last snapshot. Every journal starts with the generation
+ * of the snapshot it belongs to, so that a journal that was already compacted
+ * into a snapshot is never replayed twice.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class MoveJournal implements Closeable {
+
+    private static final int MAGIC = 0x48534A4C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte CREATE = 1;
+    private static final byte SWEEP = 2;
+    private static final byte FLAG = 3;
+    private static final byte RESET = 4;
+    private static final byte DELETE = 5;
+    private static final byte SYNC_VERSION = 6;
+
+    /**
+     * Receives the operations from the journal while it is being replayed.
+     * Boards are identified by their id.
+     */
+    public interface Handler {
+
+        void create(int board, BoardData data);
+
+        void sweep(int board, int x, int y);
+
+        void flag(int board, int x, int y);
+
+        void reset(int board, JsonObject game);
+
+        void delete(int board);
+
+        void syncVersion(int board, long version);
+    }
+
+    private final File file;
+    private FileChannel channel;
+
+    public MoveJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replay the operations in the journal, if the journal belongs to the
+     * snapshot with the given generation
+     *
+     * @param generation the generation of the loaded snapshot
+     * @param handler the handler that applies the operations
+     * @return the number of operations that have been replayed
+     * @throws IOException if the journal couldn't be read
+     */
+    public int replay(long generation, Handler handler) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return 0;
+        }
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                return 0;
+            }
+            int version = in.readInt();
+            if (version != VERSION || in.readLong() != generation) {
+                return 0;
+            }
+            while (true) {
+                int op = in.read();
+                if (op == -1) {
+                    break;
+                }
+                int board = in.readInt();
+                switch (op) {
+                    case CREATE:
+                        handler.create(board, BoardCodec.decodeBoard(ByteBuffer.wrap(readBytes(in))));
+                        break;
+                    case SWEEP:
+                        handler.sweep(board, in.readInt(), in.readInt());
+                        break;
+                    case FLAG:
+                        handler.flag(board, in.readInt(), in.readInt());
+                        break;
+                    case RESET:
+                        handler.reset(board, BoardCodec.decodeGameState(ByteBuffer.wrap(readBytes(in))));
+                        break;
+                    case DELETE:
+                        handler.delete(board);
+                        break;
+                    case SYNC_VERSION:
+                        handler.syncVersion(board, in.readLong());
+                        break;
+                    default:
+                        throw new IOException("Unknown operation " + op + " in " + file.getName());
+                }
+                count++;
+            }
+        } catch (EOFException ex) {
+            // the last operation was only partially written, ignore it
+        }
+        return count;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return data;
+    }
+
+    static void writeCreate(DataOutputStream out, int board, BoardData data) throws IOException {
+        out.writeByte(CREATE);
+        out.writeInt(board);
+        writeBytes(out, BoardCodec.encodeBoard(data));
+    }
+
+    static void writeSweep(DataOutputStream out, int board, int x, int y) throws IOException {
+        out.writeByte(SWEEP);
+        out.writeInt(board);
+        out.writeInt(x);
+        out.writeInt(y);
+    }
+
+    static void writeFlag(DataOutputStream out, int board, int x, int y) throws IOException {
+        out.writeByte(FLAG);
+        out.writeInt(board);
+        out.writeInt(x);
+        out.writeInt(y);
+    }
+
+    static void writeReset(DataOutputStream out, int board, JsonObject game) throws IOException {
+        writeReset(out, board, BoardCodec.encodeGameState(game));
+    }
+
+    static void writeReset(DataOutputStream out, int board, byte[] encodedGame) throws IOException {
+        out.writeByte(RESET);
+        out.writeInt(board);
+        writeBytes(out, encodedGame);
+    }
+
+    static void writeDelete(DataOutputStream out, int board) throws IOException {
+        out.writeByte(DELETE);
+        out.writeInt(board);
+    }
+
+    static void writeSyncVersion(DataOutputStream out, int board, long version) throws IOException {
+        out.writeByte(SYNC_VERSION);
+        out.writeInt(board);
+        out.writeLong(version);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    /**
+     * Append encoded operations to the end of the journal
+     *
+     * @param operations the encoded operations
+     * @throws IOException if the operations couldn't be written
+     */
+    void append(ByteBuffer operations) throws IOException {
+        FileChannel journalChannel = getChannel();
+        journalChannel.position(journalChannel.size());
+        while (operations.hasRemaining()) {
+            journalChannel.write(operations);
+        }
+    }
+
+    /**
+     * Empty the journal and start a new one for the snapshot with the given
+     * generation
+     *
+     * @param generation the generation of the snapshot that was just written
+     * @throws IOException if the journal couldn't be reset
+     */
+    void reset(long generation) throws IOException {
+        FileChannel journalChannel = getChannel();
+        journalChannel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation);
+        header.rewind();
+        journalChannel.position(0);
+        while (header.hasRemaining()) {
+            journalChannel.write(header);
+        }
+        journalChannel.force(false);
+    }
+
+    private FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
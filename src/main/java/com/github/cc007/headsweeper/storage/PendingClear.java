@@ -0,0 +1,121 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.github.cc007.headsweeper.controller.BoardIndex;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The area of a deleted board that still has to be replaced by air, because
+ * some of its chunks weren't loaded when the board was deleted. The area is
+ * cleared chunk by chunk when those chunks are loaded again.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class PendingClear {
+
+    private final UUID worldId;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final int width;
+    private final int height;
+    private final Set<Long> chunks;
+
+    public PendingClear(UUID worldId, int x, int y, int z, int width, int height, Collection<Long> chunks) {
+        this.worldId = worldId;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.width = width;
+        this.height = height;
+        this.chunks = new LinkedHashSet<>(chunks);
+    }
+
+    /**
+     * Create a pending clear for all chunks of a board
+     *
+     * @param board the board
+     * @return the pending clear, or null if the world of the board is unknown
+     */
+    public static PendingClear ofBoard(BoardData board) {
+        if (board.getWorldId() == null) {
+            return null;
+        }
+        Set<Long> chunks = new LinkedHashSet<>();
+        for (int chunkX = board.getX() >> 4; chunkX <= (board.getX() + board.getWidth() - 1) >> 4; chunkX++) {
+            for (int chunkZ = board.getZ() >> 4; chunkZ <= (board.getZ() + board.getHeight() - 1) >> 4; chunkZ++) {
+                chunks.add(BoardIndex.chunkKey(chunkX, chunkZ));
+            }
+        }
+        return new PendingClear(board.getWorldId(), board.getX(), board.getY(), board.getZ(), board.getWidth(), board.getHeight(), chunks);
+    }
+
+    public UUID getWorldId() {
+        return worldId;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the keys of the chunks that still have to be cleared
+     *
+     * @return the chunk keys, as created by {@link BoardIndex#chunkKey(int, int)}
+     */
+    public Set<Long> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Get a copy of this pending clear that can be stored while this one keeps
+     * changing
+     *
+     * @return the copy
+     */
+    public PendingClear copy() {
+        return new PendingClear(worldId, x, y, z, width, height, chunks);
+    }
+}
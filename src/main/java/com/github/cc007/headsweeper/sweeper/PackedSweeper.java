@@ -0,0 +1,459 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sweeper;
+
+import com.github.cc007.headsweeper.controller.TileState;
+import com.github.cc007.mcsweeper.api.Field;
+import com.github.cc007.mcsweeper.api.Sweeper;
+
+import com.google.gson.JsonObject;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * A {@link Sweeper} that stores its mines as a bitset and the state of its
+ * tiles as {@link TileState} codes in a byte array. Empty regions are
+ * revealed with an iterative flood fill and the end of the game is detected
+ * with counters, so no operation has to scan the whole field.
+ * <p>
+ * The mines are only placed when the first tile is swept, away from that
+ * tile and its neighbours, so the first sweep never hits a mine. They are
+ * placed from a seed that is chosen when the field is reset, so replaying
+ * the same sweeps always gives the same field.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class PackedSweeper implements Sweeper {
+
+    public static final String ENGINE_NAME = "packed";
+    public static final String ENGINE_KEY = "engine";
+    public static final String WIDTH_KEY = "width";
+    public static final String HEIGHT_KEY = "height";
+    public static final String BOMB_COUNT_KEY = "bombCount";
+    public static final String LOST_KEY = "lost";
+    public static final String MINES_KEY = "mines";
+    public static final String STATES_KEY = "states";
+    public static final String SEED_KEY = "seed";
+    public static final String GENERATED_KEY = "generated";
+
+    private static final int[] NO_TILES = new int[0];
+
+    private final Random random;
+    private final Field field;
+    private int width;
+    private int height;
+    private int bombCount;
+    private long[] mines;
+    private byte[] states;
+    private int[] queue;
+    private int revealed;
+    private int flagged;
+    private int correctFlags;
+    private boolean lost;
+    private long seed;
+    private boolean generated;
+
+    /**
+     * Create an empty game, to deserialize a game into
+     */
+    public PackedSweeper() {
+        this(0, 0, 0);
+    }
+
+    public PackedSweeper(int width, int height, int bombCount) {
+        this.random = new Random();
+        this.field = new PackedField();
+        init(width, height, bombCount);
+    }
+
+    private void init(int width, int height, int bombCount) {
+        this.width = Math.max(0, width);
+        this.height = Math.max(0, height);
+        this.bombCount = Math.max(0, Math.min(bombCount, this.width * this.height));
+        this.mines = new long[(this.width * this.height + 63) >>> 6];
+        this.states = new byte[this.width * this.height];
+        this.queue = null;
+        Arrays.fill(states, TileState.UNKNOWN);
+        revealed = 0;
+        flagged = 0;
+        correctFlags = 0;
+        lost = false;
+        generated = false;
+    }
+
+    /**
+     * Create a copy of this game that doesn't share any state with it
+     *
+     * @return the copy
+     */
+    public PackedSweeper copy() {
+        PackedSweeper copy = new PackedSweeper();
+        copy.width = width;
+        copy.height = height;
+        copy.bombCount = bombCount;
+        copy.mines = mines.clone();
+        copy.states = states.clone();
+        copy.revealed = revealed;
+        copy.flagged = flagged;
+        copy.correctFlags = correctFlags;
+        copy.lost = lost;
+        copy.seed = seed;
+        copy.generated = generated;
+        return copy;
+    }
+
+    @Override
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Get the number of bombs on the field
+     *
+     * @return the number of bombs
+     */
+    public int getBombCount() {
+        return bombCount;
+    }
+
+    /**
+     * Clear the field. The mines are placed when the first tile is swept.
+     */
+    @Override
+    public void resetField() {
+        init(width, height, bombCount);
+        seed = random.nextLong();
+    }
+
+    /**
+     * Place the mines anywhere but on the given tile and its neighbours, or
+     * only away from the tile itself if there isn't enough room for that.
+     * The tiles are sampled with Floyd's algorithm, which takes one random
+     * number per mine. On fields that are more than half mines, the safe
+     * tiles are sampled instead.
+     *
+     * @param x the x coordinate of the first swept tile
+     * @param y the y coordinate of the first swept tile
+     */
+    private void generateMines(int x, int y) {
+        int tileCount = width * height;
+        int[] excluded = new int[9];
+        int excludedCount = 0;
+        for (int neighbourY = Math.max(0, y - 1); neighbourY <= Math.min(height - 1, y + 1); neighbourY++) {
+            for (int neighbourX = Math.max(0, x - 1); neighbourX <= Math.min(width - 1, x + 1); neighbourX++) {
+                excluded[excludedCount++] = neighbourY * width + neighbourX;
+            }
+        }
+        if (bombCount > tileCount - excludedCount) {
+            excluded[0] = y * width + x;
+            excludedCount = bombCount < tileCount ? 1 : 0;
+        }
+        excluded = Arrays.copyOf(excluded, excludedCount);
+        Arrays.sort(excluded);
+
+        SplittableRandom mineRandom = new SplittableRandom(seed);
+        int candidates = tileCount - excludedCount;
+        if (bombCount <= candidates / 2) {
+            flipSample(mineRandom, candidates, bombCount, excluded);
+        } else {
+            // on dense fields, fill the field and sample the safe tiles instead
+            Arrays.fill(mines, -1L);
+            if ((tileCount & 63) != 0) {
+                mines[mines.length - 1] = (1L << tileCount) - 1;
+            }
+            for (int tile : excluded) {
+                mines[tile >>> 6] &= ~(1L << tile);
+            }
+            flipSample(mineRandom, candidates, candidates - bombCount, excluded);
+        }
+        if (flagged > 0) {
+            for (int tile = 0; tile < tileCount; tile++) {
+                if (states[tile] == TileState.FLAG && isMine(tile)) {
+                    correctFlags++;
+                }
+            }
+        }
+        generated = true;
+    }
+
+    /**
+     * Flip the mine bits of distinct random tiles, sampled with Floyd's
+     * algorithm. Before sampling, all candidate tiles must have the same mine
+     * bit, so a flipped bit marks a tile as sampled and no extra set is
+     * needed.
+     *
+     * @param random the random number generator
+     * @param candidates the number of tiles to choose from
+     * @param count the number of tiles to flip
+     * @param excluded the sorted tiles that can't be sampled
+     */
+    private void flipSample(SplittableRandom random, int candidates, int count, int[] excluded) {
+        if (count == 0) {
+            return;
+        }
+        boolean initial = isMine(toTile(0, excluded));
+        for (int j = candidates - count; j < candidates; j++) {
+            int tile = toTile(random.nextInt(j + 1), excluded);
+            if (isMine(tile) != initial) {
+                tile = toTile(j, excluded);
+            }
+            mines[tile >>> 6] ^= 1L << tile;
+        }
+    }
+
+    /**
+     * Map a candidate number onto a tile, skipping the excluded tiles
+     *
+     * @param candidate the candidate number
+     * @param excluded the sorted excluded tiles
+     * @return the tile
+     */
+    private static int toTile(int candidate, int[] excluded) {
+        int tile = candidate;
+        for (int excludedTile : excluded) {
+            if (tile >= excludedTile) {
+                tile++;
+            }
+        }
+        return tile;
+    }
+
+    @Override
+    public void sweep(int x, int y) {
+        reveal(x, y);
+    }
+
+    /**
+     * Sweep a tile. If the tile has no bombs around it, all connected tiles
+     * without bombs around them and their neighbours are revealed as well.
+     *
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @return the indices (y * width + x) of the tiles that have changed
+     */
+    public int[] reveal(int x, int y) {
+        if (isEnded() || !isInField(x, y)) {
+            return NO_TILES;
+        }
+        int tile = y * width + x;
+        if (states[tile] != TileState.UNKNOWN) {
+            return NO_TILES;
+        }
+        if (!generated) {
+            generateMines(x, y);
+        }
+        if (isMine(tile)) {
+            lost = true;
+            return revealMines();
+        }
+        if (queue == null) {
+            queue = new int[Math.min(width * height, 1024)];
+        }
+        int head = 0;
+        int tail = 0;
+        states[tile] = countMines(x, y);
+        revealed++;
+        queue[tail++] = tile;
+        while (head < tail) {
+            int current = queue[head++];
+            if (states[current] != 0) {
+                continue;
+            }
+            int currentX = current % width;
+            int currentY = current / width;
+            for (int neighbourY = Math.max(0, currentY - 1); neighbourY <= Math.min(height - 1, currentY + 1); neighbourY++) {
+                for (int neighbourX = Math.max(0, currentX - 1); neighbourX <= Math.min(width - 1, currentX + 1); neighbourX++) {
+                    int neighbour = neighbourY * width + neighbourX;
+                    if (states[neighbour] == TileState.UNKNOWN) {
+                        states[neighbour] = countMines(neighbourX, neighbourY);
+                        revealed++;
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, Math.min(width * height, queue.length * 2));
+                        }
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    private int[] revealMines() {
+        int[] changed = new int[bombCount];
+        int count = 0;
+        for (int word = 0; word < mines.length; word++) {
+            long bits = mines[word];
+            while (bits != 0) {
+                int tile = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (states[tile] == TileState.FLAG) {
+                    flagged--;
+                    correctFlags--;
+                }
+                states[tile] = TileState.BOMB;
+                changed[count++] = tile;
+            }
+        }
+        return Arrays.copyOf(changed, count);
+    }
+
+    @Override
+    public void flag(int x, int y) {
+        toggleFlag(x, y);
+    }
+
+    /**
+     * Place or remove a flag on a tile
+     *
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @return the indices (y * width + x) of the tiles that have changed
+     */
+    public int[] toggleFlag(int x, int y) {
+        if (isEnded() || !isInField(x, y)) {
+            return NO_TILES;
+        }
+        int tile = y * width + x;
+        int change;
+        if (states[tile] == TileState.UNKNOWN) {
+            states[tile] = TileState.FLAG;
+            change = 1;
+        } else if (states[tile] == TileState.FLAG) {
+            states[tile] = TileState.UNKNOWN;
+            change = -1;
+        } else {
+            return NO_TILES;
+        }
+        flagged += change;
+        if (isMine(tile)) {
+            correctFlags += change;
+        }
+        return new int[]{tile};
+    }
+
+    @Override
+    public boolean hasWon() {
+        return !lost && generated && bombCount < width * height
+                && (revealed == width * height - bombCount || (flagged == bombCount && correctFlags == bombCount));
+    }
+
+    @Override
+    public boolean hasLost() {
+        return lost;
+    }
+
+    private boolean isEnded() {
+        return lost || hasWon();
+    }
+
+    private boolean isInField(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    private boolean isMine(int tile) {
+        return (mines[tile >>> 6] & 1L << tile) != 0;
+    }
+
+    private byte countMines(int x, int y) {
+        byte count = 0;
+        for (int neighbourY = Math.max(0, y - 1); neighbourY <= Math.min(height - 1, y + 1); neighbourY++) {
+            for (int neighbourX = Math.max(0, x - 1); neighbourX <= Math.min(width - 1, x + 1); neighbourX++) {
+                if (isMine(neighbourY * width + neighbourX)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public JsonObject serialize() {
+        ByteBuffer mineBytes = ByteBuffer.allocate(mines.length * 8);
+        for (long word : mines) {
+            mineBytes.putLong(word);
+        }
+        JsonObject output = new JsonObject();
+        output.addProperty(ENGINE_KEY, ENGINE_NAME);
+        output.addProperty(WIDTH_KEY, width);
+        output.addProperty(HEIGHT_KEY, height);
+        output.addProperty(BOMB_COUNT_KEY, bombCount);
+        output.addProperty(LOST_KEY, lost);
+        output.addProperty(MINES_KEY, Base64.getEncoder().encodeToString(mineBytes.array()));
+        output.addProperty(STATES_KEY, Base64.getEncoder().encodeToString(states));
+        output.addProperty(SEED_KEY, seed);
+        output.addProperty(GENERATED_KEY, generated);
+        return output;
+    }
+
+    @Override
+    public void deserialize(JsonObject input) {
+        init(input.getAsJsonPrimitive(WIDTH_KEY).getAsInt(),
+                input.getAsJsonPrimitive(HEIGHT_KEY).getAsInt(),
+                input.getAsJsonPrimitive(BOMB_COUNT_KEY).getAsInt());
+        ByteBuffer mineBytes = ByteBuffer.wrap(Base64.getDecoder().decode(input.getAsJsonPrimitive(MINES_KEY).getAsString()));
+        for (int word = 0; word < mines.length && mineBytes.remaining() >= 8; word++) {
+            mines[word] = mineBytes.getLong();
+        }
+        byte[] storedStates = Base64.getDecoder().decode(input.getAsJsonPrimitive(STATES_KEY).getAsString());
+        System.arraycopy(storedStates, 0, states, 0, Math.min(storedStates.length, states.length));
+        lost = input.getAsJsonPrimitive(LOST_KEY).getAsBoolean();
+        seed = input.getAsJsonPrimitive(SEED_KEY).getAsLong();
+        generated = input.getAsJsonPrimitive(GENERATED_KEY).getAsBoolean();
+        for (int tile = 0; tile < states.length; tile++) {
+            if (states[tile] == TileState.FLAG) {
+                flagged++;
+                if (isMine(tile)) {
+                    correctFlags++;
+                }
+            } else if (states[tile] >= 0 && states[tile] <= 8) {
+                revealed++;
+            }
+        }
+    }
+
+    /**
+     * A view of the tiles of this game
+     */
+    private final class PackedField implements Field {
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getState(int x, int y) {
+            return TileState.toState(states[y * width + x]);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sweeper;
+
+import com.github.cc007.mcsweeper.api.Field;
+import com.github.cc007.mcsweeper.api.Sweeper;
+import com.github.cc007.mcsweeper.implementation.MineSweeper;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.function.Supplier;
+
+/**
+ * The implementations of {@link Sweeper} that a board can use
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public enum SweeperEngine {
+
+    /**
+     * The {@link MineSweeper} implementation of MCSweeper
+     */
+    MCSWEEPER("mcsweeper") {
+        @Override
+        public Sweeper create(int width, int height, int bombCount) {
+            return new MineSweeper(width, height, bombCount);
+        }
+
+        @Override
+        public Sweeper deserialize(JsonObject gameState) {
+            MineSweeper game = new MineSweeper(true);
+            game.deserialize(gameState);
+            return game;
+        }
+
+        @Override
+        public Supplier<Sweeper> newGameLike(Sweeper game) {
+            JsonObject gameState = game.serialize();
+            return () -> deserialize(gameState);
+        }
+
+        @Override
+        public Supplier<JsonObject> serializeLater(Sweeper game) {
+            // MineSweeper can't be copied, so it is serialized right away
+            JsonObject gameState = game.serialize();
+            return () -> gameState;
+        }
+
+        @Override
+        public int[] sweep(Sweeper game, int x, int y) {
+            game.sweep(x, y);
+            return null;
+        }
+
+        @Override
+        public int[] flag(Sweeper game, int x, int y) {
+            game.flag(x, y);
+            return null;
+        }
+
+        @Override
+        public int getBombCount(Sweeper game) {
+            // MCSweeper doesn't expose the bomb count, but every tile that isn't
+            // a number is a bomb once the game has been won, and every bomb is
+            // shown once the game has been lost
+            if (!game.hasWon() && !game.hasLost()) {
+                return -1;
+            }
+            Field field = game.getField();
+            int bombCount = 0;
+            for (int x = 0; x < field.getWidth(); x++) {
+                for (int y = 0; y < field.getHeight(); y++) {
+                    int state = field.getState(x, y);
+                    if (game.hasWon() ? state < 0 : state == Field.BOMB_STATE) {
+                        bombCount++;
+                    }
+                }
+            }
+            return bombCount;
+        }
+    },
+    /**
+     * The {@link PackedSweeper} implementation of HeadSweeper
+     */
+    PACKED(PackedSweeper.ENGINE_NAME) {
+        @Override
+        public Sweeper create(int width, int height, int bombCount) {
+            return new PackedSweeper(width, height, bombCount);
+        }
+
+        @Override
+        public Sweeper deserialize(JsonObject gameState) {
+            PackedSweeper game = new PackedSweeper();
+            game.deserialize(gameState);
+            return game;
+        }
+
+        @Override
+        public Supplier<Sweeper> newGameLike(Sweeper game) {
+            PackedSweeper packedGame = (PackedSweeper) game;
+            int width = packedGame.getField().getWidth();
+            int height = packedGame.getField().getHeight();
+            int bombCount = packedGame.getBombCount();
+            return () -> create(width, height, bombCount);
+        }
+
+        @Override
+        public Supplier<JsonObject> serializeLater(Sweeper game) {
+            return ((PackedSweeper) game).copy()::serialize;
+        }
+
+        @Override
+        public int[] sweep(Sweeper game, int x, int y) {
+            return ((PackedSweeper) game).reveal(x, y);
+        }
+
+        @Override
+        public int[] flag(Sweeper game, int x, int y) {
+            return ((PackedSweeper) game).toggleFlag(x, y);
+        }
+
+        @Override
+        public int getBombCount(Sweeper game) {
+            return ((PackedSweeper) game).getBombCount();
+        }
+    };
+
+    private final String name;
+
+    SweeperEngine(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name of this engine, as used in commands, the config and the
+     * serialized games
+     *
+     * @return the name of this engine
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Create a new game
+     *
+     * @param width the width of the field
+     * @param height the height of the field
+     * @param bombCount the number of bombs
+     * @return the game
+     */
+    public abstract Sweeper create(int width, int height, int bombCount);
+
+    /**
+     * Create a game from its serialized state
+     *
+     * @param gameState the serialized state of the game
+     * @return the game
+     */
+    public abstract Sweeper deserialize(JsonObject gameState);
+
+    /**
+     * Prepare the creation of a game with the same size and bomb count as the
+     * given game. This method has to be called on the thread that owns the
+     * given game, but the returned supplier can be called on any thread.
+     * The field of the new game still has to be reset.
+     *
+     * @param game the game to copy the size and bomb count from
+     * @return the supplier of the new game
+     */
+    public abstract Supplier<Sweeper> newGameLike(Sweeper game);
+
+    /**
+     * Capture the state of a game, so that it can be serialized later. This
+     * method has to be called on the thread that owns the given game, but
+     * the returned supplier can be called on any thread.
+     *
+     * @param game the game to capture
+     * @return the supplier of the serialized state of the game
+     */
+    public abstract Supplier<JsonObject> serializeLater(Sweeper game);
+
+    /**
+     * Sweep a tile of a game
+     *
+     * @param game the game
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @return the indices (y * width + x) of the tiles that have changed, or
+     * null if the engine doesn't know which tiles have changed
+     */
+    public abstract int[] sweep(Sweeper game, int x, int y);
+
+    /**
+     * Place or remove a flag on a tile of a game
+     *
+     * @param game the game
+     * @param x the x coordinate of the tile
+     * @param y the y coordinate of the tile
+     * @return the indices (y * width + x) of the tiles that have changed, or
+     * null if the engine doesn't know which tiles have changed
+     */
+    public abstract int[] flag(Sweeper game, int x, int y);
+
+    /**
+     * Get the number of bombs of a game. Engines that don't keep track of the
+     * bomb count only know it once the game has ended.
+     *
+     * @param game the game
+     * @return the number of bombs, or -1 if it isn't known yet
+     */
+    public abstract int getBombCount(Sweeper game);
+
+    /**
+     * Get the engine of a game
+     *
+     * @param game the game
+     * @return the engine of the game
+     */
+    public static SweeperEngine of(Sweeper game) {
+        return game instanceof PackedSweeper ? PACKED : MCSWEEPER;
+    }
+
+    /**
+     * Get an engine by its name
+     *
+     * @param name the name of the engine
+     * @return the engine, or null if there is no engine with that name
+     */
+    public static SweeperEngine fromName(String name) {
+        for (SweeperEngine engine : values()) {
+            if (engine.name.equalsIgnoreCase(name)) {
+                return engine;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the engine that a serialized game belongs to. Games that don't
+     * name their engine were serialized by {@link MineSweeper}.
+     *
+     * @param gameState the serialized state of the game
+     * @return the engine of the game
+     */
+    public static SweeperEngine of(JsonObject gameState) {
+        JsonElement engine = gameState.get(PackedSweeper.ENGINE_KEY);
+        if (engine == null || !engine.isJsonPrimitive()) {
+            return MCSWEEPER;
+        }
+        SweeperEngine sweeperEngine = fromName(engine.getAsString());
+        return sweeperEngine == null ? MCSWEEPER : sweeperEngine;
+    }
+}
@@ -0,0 +1,250 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sync;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A change to a single board that is sent between servers. Moves carry the
+ * sync version of the board after the move, so a move is only applied on a
+ * board that has the version right before it. Moves also carry the player
+ * that made them, so that the other servers can credit the player when a
+ * move ends the game. Sweeps and flags are a few dozen bytes, so the traffic between servers grows with the number of moves
+ * and not with the size of the boards. Only resets and full states carry the
+ * encoded game.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public final class BoardDelta {
+
+    /**
+     * The kinds of deltas
+     */
+    public enum Type {
+        /**
+         * A tile has been swept
+         */
+        SWEEP,
+        /**
+         * A tile has been flagged or unflagged
+         */
+        FLAG,
+        /**
+         * The board has been reset to a new game
+         */
+        RESET,
+        /**
+         * The full state of the board, sent to servers that are behind or
+         * that made a conflicting move
+         */
+        STATE,
+        /**
+         * A server asks for the state of a board that is newer than its own
+         */
+        STATE_REQUEST
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private final Type type;
+    private final String origin;
+    private final int board;
+    private final long version;
+    private final int x;
+    private final int y;
+    private final UUID playerId;
+    private final String playerName;
+    private final byte[] gameState;
+
+    private BoardDelta(Type type, String origin, int board, long version, int x, int y, UUID playerId, String playerName, byte[] gameState) {
+        this.type = type;
+        this.origin = origin;
+        this.board = board;
+        this.version = version;
+        this.x = x;
+        this.y = y;
+        this.playerId = playerId;
+        this.playerName = playerName;
+        this.gameState = gameState;
+    }
+
+    public static BoardDelta sweep(String origin, int board, long version, UUID playerId, String playerName, int x, int y) {
+        return new BoardDelta(Type.SWEEP, origin, board, version, x, y, playerId, playerName, null);
+    }
+
+    public static BoardDelta flag(String origin, int board, long version, UUID playerId, String playerName, int x, int y) {
+        return new BoardDelta(Type.FLAG, origin, board, version, x, y, playerId, playerName, null);
+    }
+
+    public static BoardDelta reset(String origin, int board, long version, byte[] gameState) {
+        return new BoardDelta(Type.RESET, origin, board, version, 0, 0, null, null, gameState);
+    }
+
+    public static BoardDelta state(String origin, int board, long version, byte[] gameState) {
+        return new BoardDelta(Type.STATE, origin, board, version, 0, 0, null, null, gameState);
+    }
+
+    public static BoardDelta stateRequest(String origin, int board, long version) {
+        return new BoardDelta(Type.STATE_REQUEST, origin, board, version, 0, 0, null, null, null);
+    }
+
+    /**
+     * Encode this delta for backends that send bytes
+     *
+     * @return the encoded delta
+     */
+    public byte[] encode() {
+        byte[] originBytes = origin.getBytes(StandardCharsets.UTF_8);
+        byte[] playerNameBytes = playerName == null ? null : playerName.getBytes(StandardCharsets.UTF_8);
+        int size = 1 + 2 + originBytes.length + 4 + 8;
+        if (type == Type.SWEEP || type == Type.FLAG) {
+            size += 8 + 16 + 2 + playerNameBytes.length;
+        } else if (gameState != null) {
+            size += 4 + gameState.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put((byte) type.ordinal());
+        buffer.putShort((short) originBytes.length).put(originBytes);
+        buffer.putInt(board).putLong(version);
+        if (type == Type.SWEEP || type == Type.FLAG) {
+            buffer.putInt(x).putInt(y);
+            buffer.putLong(playerId.getMostSignificantBits()).putLong(playerId.getLeastSignificantBits());
+            buffer.putShort((short) playerNameBytes.length).put(playerNameBytes);
+        } else if (gameState != null) {
+            buffer.putInt(gameState.length).put(gameState);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decode a delta that was encoded with {@link #encode()}
+     *
+     * @param data the encoded delta
+     * @return the delta
+     * @throws IOException if the data isn't a valid delta
+     */
+    public static BoardDelta decode(byte[] data) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            int typeIndex = buffer.get();
+            if (typeIndex < 0 || typeIndex >= TYPES.length) {
+                throw new IOException("Unknown delta type " + typeIndex);
+            }
+            Type type = TYPES[typeIndex];
+            String origin = readString(buffer);
+            int board = buffer.getInt();
+            long version = buffer.getLong();
+            switch (type) {
+                case SWEEP:
+                case FLAG:
+                    int x = buffer.getInt();
+                    int y = buffer.getInt();
+                    UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+                    return new BoardDelta(type, origin, board, version, x, y, playerId, readString(buffer), null);
+                case RESET:
+                case STATE:
+                    byte[] gameState = new byte[buffer.getInt()];
+                    buffer.get(gameState);
+                    return new BoardDelta(type, origin, board, version, 0, 0, null, null, gameState);
+                default:
+                    return new BoardDelta(type, origin, board, version, 0, 0, null, null, null);
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+            throw new IOException("Truncated delta", ex);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the id of the server that sent this delta
+     *
+     * @return the server id
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public int getBoard() {
+        return board;
+    }
+
+    /**
+     * Get the sync version of the board after a move or reset, the version
+     * of a full state, or the version of the server that requests a state
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Get the UUID of the player that made a move
+     *
+     * @return the UUID of the player, or null for other deltas
+     */
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Get the name of the player that made a move
+     *
+     * @return the name of the player, or null for other deltas
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    /**
+     * Get the game of a reset or a full state, encoded with
+     * {@link com.github.cc007.headsweeper.storage.BoardCodec#encodeGameState}
+     *
+     * @return the encoded game, or null for other deltas
+     */
+    public byte[] getGameState() {
+        return gameState;
+    }
+}
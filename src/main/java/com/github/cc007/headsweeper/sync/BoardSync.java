@@ -0,0 +1,341 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sync;
+
+import com.github.cc007.headsweeper.HeadSweeper;
+import com.github.cc007.headsweeper.controller.HeadSweeperGame;
+import com.github.cc007.headsweeper.events.BoardCompletedEvent;
+import com.github.cc007.headsweeper.events.BoardExplodedEvent;
+import com.github.cc007.headsweeper.events.BoardResetEvent;
+import com.github.cc007.headsweeper.metrics.MetricsRegistry;
+import com.github.cc007.headsweeper.storage.BoardCodec;
+import com.github.cc007.headsweeper.sweeper.SweeperEngine;
+import com.github.cc007.mcsweeper.api.Sweeper;
+import com.google.gson.JsonObject;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Keeps the boards of multiple servers in sync. Every move and reset on this
+ * server increases the sync version of the board and is published as a
+ * {@link BoardDelta}. The deltas of other servers are applied optimistically:
+ * a move is only applied if it was made on the version that this server has.
+ * <ul>
+ * <li>If this server is behind, it asks the other servers for the state of
+ * the board.</li>
+ * <li>If this server is ahead, it sends its state to the other servers.</li>
+ * <li>If two servers made a different move on the same version, the server
+ * with the lowest id wins and sends its state, which the other server
+ * adopts.</li>
+ * </ul>
+ * Applied moves are rendered through the {@link
+ * com.github.cc007.headsweeper.controller.BoardUpdateQueue}, which only
+ * places the tiles that the move changed, and fire the same events as moves
+ * on this server when they end the game. Without a backend, the versions
+ * are still kept up to date, so that the boards can be shared later.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BoardSync implements Runnable {
+
+    private final HeadSweeper plugin;
+    private final String serverId;
+    private final Queue<Received> incoming;
+    private final Map<HeadSweeperGame, Long> requestedStates;
+    private final LongAdder published;
+    private final LongAdder applied;
+    private final LongAdder conflicts;
+    private BoardSyncBackend backend;
+    private BukkitTask task;
+
+    public BoardSync(HeadSweeper plugin, String serverId) {
+        this.plugin = plugin;
+        this.serverId = serverId;
+        this.incoming = new ConcurrentLinkedQueue<>();
+        this.requestedStates = new IdentityHashMap<>();
+        this.published = plugin.getMetricsRegistry().counter(MetricsRegistry.SYNC_PUBLISHED);
+        this.applied = plugin.getMetricsRegistry().counter(MetricsRegistry.SYNC_APPLIED);
+        this.conflicts = plugin.getMetricsRegistry().counter(MetricsRegistry.SYNC_CONFLICTS);
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * Start sharing the boards through a backend and ask the other servers
+     * for newer states of the boards. This method has to be called on the
+     * main thread, once the boards have been loaded.
+     *
+     * @param backend the backend
+     */
+    public void start(BoardSyncBackend backend) {
+        stop();
+        this.backend = backend;
+        backend.start(serverId, this::receive);
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1, 1);
+        for (HeadSweeperGame game : plugin.getController().getSweeperGames()) {
+            requestState(game);
+        }
+    }
+
+    /**
+     * Stop sharing the boards
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        if (backend != null) {
+            backend.stop();
+            backend = null;
+        }
+        incoming.clear();
+        requestedStates.clear();
+    }
+
+    public boolean isStarted() {
+        return backend != null;
+    }
+
+    /**
+     * Get the number of deltas that have been received but not yet applied
+     *
+     * @return the number of deltas
+     */
+    public int getPendingDeltas() {
+        return incoming.size();
+    }
+
+    public void sweepMade(HeadSweeperGame game, Player player, int x, int y) {
+        game.setSyncVersion(game.getSyncVersion() + 1);
+        publish(BoardDelta.sweep(serverId, game.getId(), game.getSyncVersion(), player.getUniqueId(), player.getName(), x, y));
+    }
+
+    public void flagMade(HeadSweeperGame game, Player player, int x, int y) {
+        game.setSyncVersion(game.getSyncVersion() + 1);
+        publish(BoardDelta.flag(serverId, game.getId(), game.getSyncVersion(), player.getUniqueId(), player.getName(), x, y));
+    }
+
+    /**
+     * Publish a reset of a game
+     *
+     * @param game the game that has been reset
+     * @param encodedGame the new game, encoded with
+     * {@link BoardCodec#encodeGameState}
+     */
+    public void resetMade(HeadSweeperGame game, byte[] encodedGame) {
+        game.setSyncVersion(game.getSyncVersion() + 1);
+        publish(BoardDelta.reset(serverId, game.getId(), game.getSyncVersion(), encodedGame));
+    }
+
+    private void publish(BoardDelta delta) {
+        if (backend == null) {
+            return;
+        }
+        try {
+            backend.publish(delta);
+            published.increment();
+        } catch (RuntimeException ex) {
+            plugin.getLogger().log(Level.WARNING, "Couldn't publish a change of board " + delta.getBoard(), ex);
+        }
+    }
+
+    /**
+     * Queue a delta of another server. The games of resets and states are
+     * decoded on the thread of the backend, so that the main thread only has
+     * to swap them in.
+     */
+    private void receive(BoardDelta delta) {
+        Sweeper game = null;
+        if (delta.getGameState() != null) {
+            try {
+                JsonObject gameState = BoardCodec.decodeGameState(ByteBuffer.wrap(delta.getGameState()));
+                game = SweeperEngine.of(gameState).deserialize(gameState);
+            } catch (IOException | RuntimeException ex) {
+                plugin.getLogger().log(Level.WARNING, "Received an invalid state of board " + delta.getBoard() + " from " + delta.getOrigin(), ex);
+                return;
+            }
+        }
+        incoming.add(new Received(delta, game));
+    }
+
+    @Override
+    public void run() {
+        Received received;
+        while ((received = incoming.poll()) != null) {
+            apply(received.delta, received.game);
+        }
+    }
+
+    private void apply(BoardDelta delta, Sweeper newGame) {
+        HeadSweeperGame game = plugin.getController().getGame(delta.getBoard());
+        if (game == null) {
+            // boards are created and deleted on every server separately
+            return;
+        }
+        long version = game.getSyncVersion();
+        switch (delta.getType()) {
+            case SWEEP:
+            case FLAG:
+            case RESET:
+                long baseVersion = delta.getVersion() - 1;
+                if (baseVersion == version) {
+                    applyMove(game, delta, newGame);
+                    applied.increment();
+                } else if (baseVersion < version) {
+                    conflicts.increment();
+                    if (baseVersion + 1 < version || winsFrom(delta.getOrigin())) {
+                        publishState(game);
+                    }
+                } else {
+                    requestState(game);
+                }
+                break;
+            case STATE:
+                if (delta.getVersion() > version || delta.getVersion() == version && !winsFrom(delta.getOrigin())) {
+                    adoptState(game, delta.getVersion(), newGame, delta.getGameState());
+                }
+                break;
+            case STATE_REQUEST:
+                if (version > delta.getVersion()) {
+                    publishState(game);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Check if this server wins a conflict with another server
+     */
+    private boolean winsFrom(String origin) {
+        return serverId.compareTo(origin) < 0;
+    }
+
+    private void applyMove(HeadSweeperGame game, BoardDelta delta, Sweeper newGame) {
+        int gameNr = game.getId();
+        boolean ended = game.getGame().hasWon() || game.getGame().hasLost();
+        int[] changedTiles = null;
+        switch (delta.getType()) {
+            case SWEEP:
+                if (game.getStartTime() == 0) {
+                    game.setStartTime(System.currentTimeMillis());
+                }
+                changedTiles = SweeperEngine.of(game.getGame()).sweep(game.getGame(), delta.getX(), delta.getY());
+                plugin.getPersister().recordSweep(gameNr, delta.getX(), delta.getY());
+                break;
+            case FLAG:
+                changedTiles = SweeperEngine.of(game.getGame()).flag(game.getGame(), delta.getX(), delta.getY());
+                plugin.getPersister().recordFlag(gameNr, delta.getX(), delta.getY());
+                break;
+            case RESET:
+                plugin.getAutoResetScheduler().cancel(game);
+                game.setGame(newGame);
+                plugin.getPersister().recordReset(gameNr, delta.getGameState());
+                Bukkit.getServer().getPluginManager().callEvent(new BoardResetEvent(null, gameNr, new Date()));
+                break;
+            default:
+                return;
+        }
+        game.setSyncVersion(delta.getVersion());
+        requestedStates.remove(game);
+        gameChanged(game, changedTiles);
+        if (!ended && delta.getType() != BoardDelta.Type.RESET) {
+            Location location = new Location(game.getWorld(), game.getX() + delta.getX(), game.getY(), game.getZ() + delta.getY());
+            if (game.getGame().hasWon()) {
+                Bukkit.getServer().getPluginManager().callEvent(new BoardCompletedEvent(null, delta.getPlayerId(), delta.getPlayerName(), gameNr, location, new Date()));
+            } else if (game.getGame().hasLost()) {
+                Bukkit.getServer().getPluginManager().callEvent(new BoardExplodedEvent(null, delta.getPlayerId(), delta.getPlayerName(), gameNr, location, new Date()));
+            }
+        }
+    }
+
+    private void adoptState(HeadSweeperGame game, long version, Sweeper newGame, byte[] encodedGame) {
+        plugin.getAutoResetScheduler().cancel(game);
+        game.setGame(newGame);
+        game.setSyncVersion(version);
+        plugin.getPersister().recordReset(game.getId(), encodedGame);
+        plugin.getPersister().recordSyncVersion(game.getId(), version);
+        requestedStates.remove(game);
+        gameChanged(game, null);
+    }
+
+    /**
+     * Render the tiles that have changed and schedule the reset of a game
+     * that has ended
+     *
+     * @param game the game
+     * @param changedTiles the indices of the tiles that have changed, or null
+     * if any tile may have changed
+     */
+    private void gameChanged(HeadSweeperGame game, int[] changedTiles) {
+        plugin.getUpdateQueue().queueRender(game, 0, changedTiles);
+        if (game.getGame().hasWon() || game.getGame().hasLost()) {
+            plugin.getAutoResetScheduler().gameEnded(game);
+        }
+    }
+
+    private void publishState(HeadSweeperGame game) {
+        publish(BoardDelta.state(serverId, game.getId(), game.getSyncVersion(), BoardCodec.encodeGameState(game.getGame().serialize())));
+    }
+
+    /**
+     * Ask the other servers for a newer state of a board, unless that has
+     * been done already for the current version of the board
+     */
+    private void requestState(HeadSweeperGame game) {
+        Long requestedVersion = requestedStates.get(game);
+        if (requestedVersion != null && requestedVersion == game.getSyncVersion()) {
+            return;
+        }
+        requestedStates.put(game, game.getSyncVersion());
+        publish(BoardDelta.stateRequest(serverId, game.getId(), game.getSyncVersion()));
+    }
+
+    private static final class Received {
+
+        private final BoardDelta delta;
+        private final Sweeper game;
+
+        private Received(BoardDelta delta, Sweeper game) {
+            this.delta = delta;
+            this.game = game;
+        }
+    }
+}
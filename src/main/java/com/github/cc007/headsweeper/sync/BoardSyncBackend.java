@@ -0,0 +1,61 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sync;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries board deltas between the servers that share the same boards. Other
+ * plugins can provide a backend, like one on top of a message broker, by
+ * registering it with the Bukkit ServicesManager before the boards have been
+ * loaded. Backends only have to deliver the deltas; ordering and conflicts
+ * are handled by {@link BoardSync}.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public interface BoardSyncBackend {
+
+    /**
+     * Start receiving the deltas of the other servers
+     *
+     * @param serverId the id of this server, which is the origin of the
+     * deltas that it publishes
+     * @param receiver receives the deltas of the other servers. It can be
+     * called on any thread.
+     */
+    void start(String serverId, Consumer<BoardDelta> receiver);
+
+    /**
+     * Send a delta to all other servers. This method is called on the main
+     * thread, so it shouldn't block.
+     *
+     * @param delta the delta
+     */
+    void publish(BoardDelta delta);
+
+    /**
+     * Stop receiving deltas
+     */
+    void stop();
+}
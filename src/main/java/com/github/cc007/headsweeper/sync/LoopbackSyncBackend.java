@@ -0,0 +1,106 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sync;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A backend that connects servers in the same JVM, like the plugins of a
+ * test or a benchmark. Every delta is encoded and decoded on its way, so the
+ * wire format is used the same way a network backend would use it.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class LoopbackSyncBackend implements BoardSyncBackend {
+
+    /**
+     * The servers that receive each other's deltas
+     */
+    public static final class Network {
+
+        private final List<LoopbackSyncBackend> members = new CopyOnWriteArrayList<>();
+        private final LongAdder publishedDeltas = new LongAdder();
+        private final LongAdder publishedBytes = new LongAdder();
+
+        /**
+         * Get the number of deltas that have been published on this network
+         *
+         * @return the number of deltas
+         */
+        public long getPublishedDeltas() {
+            return publishedDeltas.sum();
+        }
+
+        /**
+         * Get the size of the encoded deltas that have been published on this
+         * network
+         *
+         * @return the number of bytes
+         */
+        public long getPublishedBytes() {
+            return publishedBytes.sum();
+        }
+    }
+
+    private final Network network;
+    private String serverId;
+    private Consumer<BoardDelta> receiver;
+
+    public LoopbackSyncBackend(Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void start(String serverId, Consumer<BoardDelta> receiver) {
+        this.serverId = serverId;
+        this.receiver = receiver;
+        network.members.add(this);
+    }
+
+    @Override
+    public void publish(BoardDelta delta) {
+        byte[] encoded = delta.encode();
+        network.publishedDeltas.increment();
+        network.publishedBytes.add(encoded.length);
+        for (LoopbackSyncBackend member : network.members) {
+            if (member != this && !member.serverId.equals(delta.getOrigin())) {
+                try {
+                    member.receiver.accept(BoardDelta.decode(encoded));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        network.members.remove(this);
+    }
+}
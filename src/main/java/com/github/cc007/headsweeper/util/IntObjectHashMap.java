@@ -0,0 +1,214 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash map with primitive int keys, using open addressing with linear
+ * probing. Null values are not supported.
+ *
+ * @param <V> the type of the values
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class IntObjectHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public IntObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize * 2 - 1, DEFAULT_CAPACITY - 1)) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        return key;
+    }
+
+    private int indexOf(int key) {
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the value for a key
+     *
+     * @param key the key
+     * @return the value, or null if there is no value for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Set the value for a key
+     *
+     * @param key the key
+     * @param value the value
+     * @return the previous value, or null if there was no value for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        int index = hash(key) & mask;
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the value for a key
+     *
+     * @param key the key
+     * @return the removed value, or null if there was no value for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = (V) values[index];
+        values[index] = null;
+        size--;
+
+        // shift back the entries after the removed one, so that probing keeps working
+        int gap = index;
+        int current = (index + 1) & mask;
+        while (values[current] != null) {
+            int home = hash(keys[current]) & mask;
+            if (((current - home) & mask) >= ((current - gap) & mask)) {
+                keys[gap] = keys[current];
+                values[gap] = values[current];
+                values[current] = null;
+                gap = current;
+            }
+            current = (current + 1) & mask;
+        }
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Get a copy of all keys in this map
+     *
+     * @return the keys
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                result[count++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get a copy of all values in this map
+     *
+     * @return the values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                result.add((V) value);
+            }
+        }
+        return result;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldKeys[i]) & mask;
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
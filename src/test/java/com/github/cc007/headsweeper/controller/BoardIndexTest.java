@@ -0,0 +1,143 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.controller;
+
+import com.github.cc007.headsweeper.sweeper.PackedSweeper;
+import org.bukkit.World;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link BoardIndex} against a scan over all games
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BoardIndexTest {
+
+    @Test
+    public void findsTheSameGamesAsAScan() {
+        Random random = new Random(42);
+        World[] worlds = {world(), world()};
+        List<HeadSweeperGame> games = new ArrayList<>();
+        BoardIndex boardIndex = new BoardIndex();
+        for (int i = 0; i < 200; i++) {
+            int width = 1 + random.nextInt(40);
+            int height = 1 + random.nextInt(40);
+            int x = random.nextInt(1000) - 500;
+            int z = random.nextInt(1000) - 500;
+            World world = worlds[random.nextInt(worlds.length)];
+            boolean intersecting = false;
+            for (HeadSweeperGame game : games) {
+                intersecting |= game.isIntersecting(world, x, 64, z, width, height);
+            }
+            assertEquals(intersecting, boardIndex.isIntersecting(world, x, 64, z, width, height));
+            if (!intersecting) {
+                HeadSweeperGame game = new HeadSweeperGame(x, 64, z, new PackedSweeper(width, height, 1), world, null);
+                games.add(game);
+                boardIndex.add(game);
+            }
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            World world = worlds[random.nextInt(worlds.length)];
+            int x = random.nextInt(1100) - 550;
+            int y = 63 + random.nextInt(3);
+            int z = random.nextInt(1100) - 550;
+            HeadSweeperGame expected = null;
+            HeadSweeperGame expectedAbove = null;
+            for (HeadSweeperGame game : games) {
+                if (game.isInField(world, x, y, z)) {
+                    expected = game;
+                }
+                if (game.isUnderField(world, x, y, z)) {
+                    expectedAbove = game;
+                }
+            }
+            assertSame(expected, boardIndex.getGameAt(world, x, y, z));
+            assertSame(expectedAbove, boardIndex.getGameAbove(world, x, y, z));
+        }
+    }
+
+    @Test
+    public void removedGamesAreNotFound() {
+        World world = world();
+        BoardIndex boardIndex = new BoardIndex();
+        // spans four chunks, including negative ones
+        HeadSweeperGame game = new HeadSweeperGame(-8, 64, -8, new PackedSweeper(16, 16, 1), world, null);
+        boardIndex.add(game);
+        int version = boardIndex.getVersion();
+        assertSame(game, boardIndex.getGameAt(world, -8, 64, 7));
+        assertEquals(1, boardIndex.getGames(world, -1, 0).size());
+        assertTrue(boardIndex.isIntersecting(world, 8, 64, 0, 4, 4));
+
+        boardIndex.remove(game);
+        assertNotEquals(version, boardIndex.getVersion());
+        assertNull(boardIndex.getGameAt(world, -8, 64, 7));
+        for (int chunkX = -1; chunkX <= 0; chunkX++) {
+            for (int chunkZ = -1; chunkZ <= 0; chunkZ++) {
+                assertTrue(boardIndex.getGames(world, chunkX, chunkZ).isEmpty());
+            }
+        }
+        assertFalse(boardIndex.isIntersecting(world, 8, 64, 0, 4, 4));
+    }
+
+    @Test
+    public void chunkKeysAreUnique() {
+        assertNotEquals(BoardIndex.chunkKey(-1, 0), BoardIndex.chunkKey(0, -1));
+        assertNotEquals(BoardIndex.chunkKey(1, -1), BoardIndex.chunkKey(0, -1));
+        assertEquals(BoardIndex.chunkKey(-5, 7), BoardIndex.chunkKey(-5, 7));
+    }
+
+    /**
+     * Create a world that only knows its UID
+     */
+    private static World world() {
+        UUID uid = UUID.randomUUID();
+        return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{World.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getUID":
+                    return uid;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return uid.hashCode();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
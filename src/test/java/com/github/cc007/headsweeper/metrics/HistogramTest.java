@@ -0,0 +1,94 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the buckets and the percentiles of {@link Histogram}
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99), 0);
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+        assertEquals(9, histogram.getCount());
+        assertEquals(28, histogram.getSum());
+        assertEquals(7, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void bucketsContainTheirValues() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(value <= Histogram.upperBound(bucket));
+            assertTrue(bucket == 0 || value > Histogram.upperBound(bucket - 1));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentilesAreWithinAnEighth() {
+        Random random = new Random(42);
+        long[] values = new long[10_000];
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.abs(random.nextGaussian()) * 1_000_000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long estimate = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " < " + exact, estimate >= exact);
+            assertTrue(percentile + ": " + estimate + " > " + exact, estimate <= exact + exact / 8 + 1);
+        }
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+    }
+}
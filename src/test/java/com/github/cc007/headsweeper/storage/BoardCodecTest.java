@@ -0,0 +1,237 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.github.cc007.headsweeper.controller.BoardIndex;
+import com.github.cc007.headsweeper.controller.TileState;
+import com.github.cc007.headsweeper.sweeper.PackedSweeper;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link BoardCodec} reads back what it writes, and that it rejects
+ * data that it didn't write
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BoardCodecTest {
+
+    static final UUID WORLD_ID = UUID.fromString("5f2d1c3a-8a4e-4c1b-9a53-0c6b7e9d1f20");
+
+    @Test
+    public void snapshotRoundTrip() throws IOException {
+        List<BoardData> boards = Arrays.asList(mcsweeperBoard(7), packedBoard(12), unrenderedBoard(3));
+        List<PendingClear> pendingClears = Collections.singletonList(
+                new PendingClear(WORLD_ID, -40, 64, 17, 24, 9, Arrays.asList(BoardIndex.chunkKey(-3, 1), BoardIndex.chunkKey(-2, 1))));
+
+        BoardCodec.Snapshot snapshot = BoardCodec.decode(BoardCodec.encode(42, boards, pendingClears));
+
+        assertEquals(42, snapshot.getGeneration());
+        assertEquals(boards.size(), snapshot.getBoards().size());
+        for (int i = 0; i < boards.size(); i++) {
+            assertBoardEquals(boards.get(i), snapshot.getBoards().get(i));
+        }
+        assertEquals(1, snapshot.getPendingClears().size());
+        PendingClear pendingClear = snapshot.getPendingClears().get(0);
+        assertEquals(WORLD_ID, pendingClear.getWorldId());
+        assertEquals(-40, pendingClear.getX());
+        assertEquals(64, pendingClear.getY());
+        assertEquals(17, pendingClear.getZ());
+        assertEquals(24, pendingClear.getWidth());
+        assertEquals(9, pendingClear.getHeight());
+        assertEquals(pendingClears.get(0).getChunks(), pendingClear.getChunks());
+    }
+
+    @Test
+    public void emptySnapshotRoundTrip() throws IOException {
+        BoardCodec.Snapshot snapshot = BoardCodec.decode(BoardCodec.encode(1, Collections.<BoardData>emptyList(), Collections.<PendingClear>emptyList()));
+        assertEquals(1, snapshot.getGeneration());
+        assertTrue(snapshot.getBoards().isEmpty());
+        assertTrue(snapshot.getPendingClears().isEmpty());
+    }
+
+    @Test
+    public void packedGameStateRoundTrip() throws IOException {
+        PackedSweeper game = new PackedSweeper(9, 7, 10);
+        game.resetField();
+        game.flag(0, 0);
+        game.sweep(4, 3);
+        JsonObject decoded = BoardCodec.decodeGameState(ByteBuffer.wrap(BoardCodec.encodeGameState(game.serialize())));
+        assertEquals(game.serialize(), decoded);
+
+        PackedSweeper copy = new PackedSweeper();
+        copy.deserialize(decoded);
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 9; x++) {
+                assertEquals(game.getField().getState(x, y), copy.getField().getState(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void jsonBoardsGetDefaults() {
+        JsonObject json = new JsonObject();
+        json.addProperty("x", 10);
+        json.addProperty("y", 64);
+        json.addProperty("z", -10);
+        json.addProperty("world", "world_nether");
+        json.add("game", mcsweeperGame());
+
+        BoardData board = BoardData.fromJson(json);
+
+        assertEquals(-1, board.getId());
+        assertEquals(-1, board.getAutoResetDelay());
+        assertEquals(0, board.getSyncVersion());
+        assertEquals(10, board.getX());
+        assertNull(board.getWorldId());
+        assertEquals("world_nether", board.getWorldName());
+        assertNull(board.getRenderedStates());
+        assertEquals(mcsweeperGame(), board.getGameState());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        BoardCodec.readHeader(ByteBuffer.wrap("{\"games\": []}........".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNewerVersions() throws IOException {
+        ByteBuffer snapshot = BoardCodec.encode(1, Collections.<BoardData>emptyList(), Collections.<PendingClear>emptyList());
+        snapshot.putInt(4, 99);
+        BoardCodec.readHeader(snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedGameState() throws IOException {
+        byte[] encoded = BoardCodec.encodeGameState(mcsweeperGame());
+        BoardCodec.decodeGameState(ByteBuffer.wrap(Arrays.copyOf(encoded, encoded.length - 4)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedBoard() throws IOException {
+        BoardCodec.decodeBoard(ByteBuffer.wrap(Arrays.copyOf(BoardCodec.encodeBoard(mcsweeperBoard(1)), 20)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsIncompleteRecord() throws IOException {
+        ByteBuffer snapshot = BoardCodec.encode(1, Collections.singletonList(mcsweeperBoard(1)), Collections.<PendingClear>emptyList());
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(snapshot.array(), snapshot.limit() - 10));
+        BoardCodec.decode(truncated);
+    }
+
+    /**
+     * A board with a game state that is stored as compressed json, with a
+     * rendered state for every tile code and an odd number of tiles
+     */
+    static BoardData mcsweeperBoard(int id) {
+        byte[] rendered = new byte[3 * 5];
+        for (int i = 0; i < rendered.length; i++) {
+            rendered[i] = (byte) (i % (TileState.CODE_COUNT + 1) - 1);
+        }
+        return new BoardData.Builder()
+                .id(id)
+                .location(100, 64, -200)
+                .worldId(WORLD_ID)
+                .size(3, 5)
+                .gameState(mcsweeperGame())
+                .renderedStates(rendered)
+                .autoResetDelay(30)
+                .syncVersion(1L << 40)
+                .build();
+    }
+
+    static JsonObject mcsweeperGame() {
+        JsonObject game = new JsonObject();
+        JsonArray field = new JsonArray();
+        for (int i = 0; i < 15; i++) {
+            field.add(i % 3 == 0 ? -2 : i % 9);
+        }
+        game.add("field", field);
+        game.addProperty("bombCount", 3);
+        return game;
+    }
+
+    static BoardData packedBoard(int id) {
+        PackedSweeper game = new PackedSweeper(16, 16, 40);
+        game.resetField();
+        game.sweep(8, 8);
+        byte[] rendered = new byte[16 * 16];
+        Arrays.fill(rendered, TileState.UNKNOWN);
+        return new BoardData.Builder()
+                .id(id)
+                .location(-8, 70, 8)
+                .worldId(WORLD_ID)
+                .size(16, 16)
+                .gameState(game.serialize())
+                .renderedStates(rendered)
+                .syncVersion(5)
+                .build();
+    }
+
+    static BoardData unrenderedBoard(int id) {
+        return new BoardData.Builder()
+                .id(id)
+                .worldId(WORLD_ID)
+                .size(4, 2)
+                .gameState(mcsweeperGame())
+                .autoResetDelay(0)
+                .build();
+    }
+
+    static void assertBoardEquals(BoardData expected, BoardData actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getX(), actual.getX());
+        assertEquals(expected.getY(), actual.getY());
+        assertEquals(expected.getZ(), actual.getZ());
+        assertEquals(expected.getWorldId(), actual.getWorldId());
+        assertNull(actual.getWorldName());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getAutoResetDelay(), actual.getAutoResetDelay());
+        assertEquals(expected.getSyncVersion(), actual.getSyncVersion());
+        if (expected.getRenderedStates() == null) {
+            assertNull(actual.getRenderedStates());
+        } else {
+            assertArrayEquals(expected.getRenderedStates(), actual.getRenderedStates());
+        }
+        assertEquals(expected.getGameState(), actual.getGameState());
+        assertFalse(expected.getGameState() == actual.getGameState());
+    }
+}
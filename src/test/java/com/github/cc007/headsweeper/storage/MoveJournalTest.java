@@ -0,0 +1,214 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.storage;
+
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link MoveJournal} replays the operations it has written, and
+ * that it skips journals that don't belong to the loaded snapshot. Journals
+ * that {@link MoveJournal} can't write are written here by hand.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class MoveJournalTest {
+
+    private static final int MAGIC = 0x48534A4C;
+    private static final int VERSION = 1;
+    private static final int SWEEP = 2;
+    private static final int FLAG = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private RecordingHandler handler;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.newFile("sweeperGames.journal");
+        handler = new RecordingHandler();
+    }
+
+    @Test
+    public void replaysWrittenJournal() throws IOException {
+        BoardData created = BoardCodecTest.packedBoard(5);
+        JsonObject game = BoardCodecTest.mcsweeperGame();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MoveJournal.writeCreate(out, 5, created);
+        MoveJournal.writeSweep(out, 5, 3, 4);
+        MoveJournal.writeFlag(out, 2, 0, 1);
+        MoveJournal.writeReset(out, 2, game);
+        MoveJournal.writeSyncVersion(out, 2, 9);
+        MoveJournal.writeDelete(out, 0);
+        try (MoveJournal journal = new MoveJournal(file)) {
+            journal.reset(12);
+            journal.append(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        assertEquals(6, new MoveJournal(file).replay(12, handler));
+        assertEquals(Arrays.asList("create 5", "sweep 5 3 4", "flag 2 0 1", "reset 2", "sync 2 9", "delete 0"), handler.operations);
+        BoardCodecTest.assertBoardEquals(created, handler.created.get(5));
+        assertEquals(game, handler.resets.get(2));
+    }
+
+    @Test
+    public void appendsToExistingJournal() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        MoveJournal.writeSweep(out, 1, 2, 3);
+        try (MoveJournal journal = new MoveJournal(file)) {
+            journal.reset(12);
+            journal.append(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+        bytes.reset();
+        MoveJournal.writeFlag(out, 1, 4, 5);
+        try (MoveJournal journal = new MoveJournal(file)) {
+            journal.append(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        assertEquals(2, new MoveJournal(file).replay(12, handler));
+        assertEquals(Arrays.asList("sweep 1 2 3", "flag 1 4 5"), handler.operations);
+    }
+
+    @Test
+    public void skipsJournalOfOtherSnapshot() throws IOException {
+        DataOutputStream out = startJournal(VERSION, 11);
+        writeMove(out, SWEEP, 0, 1, 1);
+        out.close();
+        assertEquals(0, new MoveJournal(file).replay(12, handler));
+        assertTrue(handler.operations.isEmpty());
+    }
+
+    @Test
+    public void skipsNewerJournal() throws IOException {
+        DataOutputStream out = startJournal(VERSION + 1, 12);
+        writeMove(out, SWEEP, 0, 1, 1);
+        out.close();
+        assertEquals(0, new MoveJournal(file).replay(12, handler));
+    }
+
+    @Test
+    public void ignoresPartiallyWrittenOperation() throws IOException {
+        DataOutputStream out = startJournal(VERSION, 12);
+        writeMove(out, SWEEP, 0, 1, 1);
+        writeMove(out, FLAG, 0, 2, 2);
+        out.writeByte(SWEEP);
+        out.writeInt(0);
+        out.writeShort(1);
+        out.close();
+        assertEquals(2, new MoveJournal(file).replay(12, handler));
+        assertEquals(Arrays.asList("sweep 0 1 1", "flag 0 2 2"), handler.operations);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownOperation() throws IOException {
+        DataOutputStream out = startJournal(VERSION, 12);
+        out.writeByte(42);
+        out.writeInt(0);
+        out.close();
+        new MoveJournal(file).replay(12, handler);
+    }
+
+    @Test
+    public void missingJournalReplaysNothing() throws IOException {
+        assertTrue(file.delete());
+        assertEquals(0, new MoveJournal(file).replay(12, handler));
+    }
+
+    private DataOutputStream startJournal(int version, long generation) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(MAGIC);
+        out.writeInt(version);
+        out.writeLong(generation);
+        return out;
+    }
+
+    private static void writeMove(DataOutputStream out, int op, int board, int x, int y) throws IOException {
+        out.writeByte(op);
+        out.writeInt(board);
+        out.writeInt(x);
+        out.writeInt(y);
+    }
+
+    private static final class RecordingHandler implements MoveJournal.Handler {
+
+        private final List<String> operations = new ArrayList<>();
+        private final Map<Integer, BoardData> created = new HashMap<>();
+        private final Map<Integer, JsonObject> resets = new HashMap<>();
+
+        @Override
+        public void create(int board, BoardData data) {
+            operations.add("create " + board);
+            created.put(board, data);
+        }
+
+        @Override
+        public void sweep(int board, int x, int y) {
+            operations.add("sweep " + board + " " + x + " " + y);
+        }
+
+        @Override
+        public void flag(int board, int x, int y) {
+            operations.add("flag " + board + " " + x + " " + y);
+        }
+
+        @Override
+        public void reset(int board, JsonObject game) {
+            operations.add("reset " + board);
+            resets.put(board, game);
+        }
+
+        @Override
+        public void delete(int board) {
+            operations.add("delete " + board);
+        }
+
+        @Override
+        public void syncVersion(int board, long version) {
+            operations.add("sync " + board + " " + version);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sweeper;
+
+import com.github.cc007.headsweeper.controller.TileState;
+import com.github.cc007.mcsweeper.api.Field;
+
+import com.google.gson.JsonObject;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the mine placement and the flood fill of {@link PackedSweeper}
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class PackedSweeperTest {
+
+    private static final int SEEDS = 200;
+
+    @Test
+    public void sparseFieldHasExactBombCountAwayFromFirstClick() {
+        assertPlacement(16, 16, 40);
+        assertPlacement(30, 16, 99);
+        assertPlacement(9, 9, 1);
+    }
+
+    @Test
+    public void denseFieldHasExactBombCountAwayFromFirstClick() {
+        // more than half of the candidate tiles are mines, so the safe tiles are sampled
+        assertPlacement(10, 10, 80);
+        assertPlacement(9, 9, 72);
+        assertPlacement(70, 1, 60);
+    }
+
+    @Test
+    public void crowdedFieldOnlyKeepsFirstClickSafe() {
+        // there's no room to keep the neighbours of the first click free
+        for (long seed = 0; seed < SEEDS; seed++) {
+            for (int[] click : new int[][]{{0, 0}, {2, 2}, {4, 1}}) {
+                PackedSweeper game = unplaced(5, 5, 20, seed);
+                game.sweep(click[0], click[1]);
+                boolean[] mines = mines(game);
+                assertEquals(20, count(mines));
+                assertFalse(mines[click[1] * 5 + click[0]]);
+                assertFalse(game.hasLost());
+            }
+        }
+    }
+
+    @Test
+    public void fullFieldIsLostOnFirstClick() {
+        PackedSweeper game = unplaced(3, 3, 9, 1);
+        game.sweep(1, 1);
+        assertEquals(9, count(mines(game)));
+        assertTrue(game.hasLost());
+        assertFalse(game.hasWon());
+    }
+
+    @Test
+    public void sameSeedGivesSameField() {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            PackedSweeper first = unplaced(16, 16, 40, seed);
+            PackedSweeper second = unplaced(16, 16, 40, seed);
+            first.sweep(3, 7);
+            second.sweep(3, 7);
+            assertArrayEquals(mines(first), mines(second));
+        }
+    }
+
+    @Test
+    public void flagsBeforeFirstSweepAreCounted() {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            PackedSweeper game = unplaced(4, 4, 6, seed);
+            game.flag(0, 0);
+            game.sweep(3, 3);
+            if (game.hasWon()) {
+                // the first sweep revealed every safe tile
+                continue;
+            }
+            boolean[] mines = mines(game);
+            for (int tile = 0; tile < mines.length && !game.hasWon(); tile++) {
+                if (mines[tile] && tile != 0) {
+                    game.flag(tile % 4, tile / 4);
+                }
+            }
+            assertEquals(mines[0], game.hasWon());
+        }
+    }
+
+    @Test
+    public void floodFillRevealsConnectedEmptyRegion() {
+        // a wall of mines in column 2 splits the field in two
+        boolean[] mines = new boolean[5 * 5];
+        for (int y = 0; y < 5; y++) {
+            mines[y * 5 + 2] = true;
+        }
+        PackedSweeper game = placed(5, 5, mines);
+        int[] changed = game.reveal(0, 0);
+        Arrays.sort(changed);
+        assertArrayEquals(new int[]{0, 1, 5, 6, 10, 11, 15, 16, 20, 21}, changed);
+        for (int y = 0; y < 5; y++) {
+            assertEquals(0, game.getField().getState(0, y));
+            assertEquals(y == 0 || y == 4 ? 2 : 3, game.getField().getState(1, y));
+            assertEquals(Field.UNKNOWN_STATE, game.getField().getState(3, y));
+        }
+        assertFalse(game.hasWon());
+
+        game.reveal(4, 4);
+        assertTrue(game.hasWon());
+        assertEquals(0, game.reveal(3, 3).length);
+    }
+
+    @Test
+    public void sweepingMineRevealsAllMines() {
+        boolean[] mines = new boolean[4 * 4];
+        mines[0] = true;
+        mines[15] = true;
+        PackedSweeper game = placed(4, 4, mines);
+        game.flag(3, 3);
+        int[] changed = game.reveal(0, 0);
+        Arrays.sort(changed);
+        assertArrayEquals(new int[]{0, 15}, changed);
+        assertTrue(game.hasLost());
+        assertEquals(Field.BOMB_STATE, game.getField().getState(3, 3));
+    }
+
+    private static void assertPlacement(int width, int height, int bombCount) {
+        int[][] clicks = {{0, 0}, {width - 1, height - 1}, {width / 2, height / 2}, {width - 1, 0}};
+        for (long seed = 0; seed < SEEDS; seed++) {
+            for (int[] click : clicks) {
+                PackedSweeper game = unplaced(width, height, bombCount, seed);
+                game.sweep(click[0], click[1]);
+                boolean[] mines = mines(game);
+                assertEquals(bombCount, count(mines));
+                for (int y = Math.max(0, click[1] - 1); y <= Math.min(height - 1, click[1] + 1); y++) {
+                    for (int x = Math.max(0, click[0] - 1); x <= Math.min(width - 1, click[0] + 1); x++) {
+                        assertFalse("mine next to the first click at " + x + ", " + y, mines[y * width + x]);
+                    }
+                }
+                assertFalse(game.hasLost());
+            }
+        }
+    }
+
+    private static int count(boolean[] mines) {
+        int count = 0;
+        for (boolean mine : mines) {
+            if (mine) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Create a game whose mines are placed from the given seed on its first
+     * sweep
+     */
+    static PackedSweeper unplaced(int width, int height, int bombCount, long seed) {
+        return create(width, height, bombCount, new boolean[width * height], seed, false);
+    }
+
+    /**
+     * Create a game with the given mines
+     */
+    static PackedSweeper placed(int width, int height, boolean[] mines) {
+        int bombCount = 0;
+        for (boolean mine : mines) {
+            if (mine) {
+                bombCount++;
+            }
+        }
+        return create(width, height, bombCount, mines, 0, true);
+    }
+
+    private static PackedSweeper create(int width, int height, int bombCount, boolean[] mines, long seed, boolean generated) {
+        long[] words = new long[(mines.length + 63) >>> 6];
+        for (int tile = 0; tile < mines.length; tile++) {
+            if (mines[tile]) {
+                words[tile >>> 6] |= 1L << tile;
+            }
+        }
+        ByteBuffer mineBytes = ByteBuffer.allocate(words.length * 8);
+        for (long word : words) {
+            mineBytes.putLong(word);
+        }
+        byte[] states = new byte[width * height];
+        Arrays.fill(states, TileState.UNKNOWN);
+        JsonObject gameState = new JsonObject();
+        gameState.addProperty(PackedSweeper.ENGINE_KEY, PackedSweeper.ENGINE_NAME);
+        gameState.addProperty(PackedSweeper.WIDTH_KEY, width);
+        gameState.addProperty(PackedSweeper.HEIGHT_KEY, height);
+        gameState.addProperty(PackedSweeper.BOMB_COUNT_KEY, bombCount);
+        gameState.addProperty(PackedSweeper.LOST_KEY, false);
+        gameState.addProperty(PackedSweeper.MINES_KEY, Base64.getEncoder().encodeToString(mineBytes.array()));
+        gameState.addProperty(PackedSweeper.STATES_KEY, Base64.getEncoder().encodeToString(states));
+        gameState.addProperty(PackedSweeper.SEED_KEY, seed);
+        gameState.addProperty(PackedSweeper.GENERATED_KEY, generated);
+        PackedSweeper game = new PackedSweeper();
+        game.deserialize(gameState);
+        return game;
+    }
+
+    /**
+     * Read the mines of a game from its serialized state
+     */
+    static boolean[] mines(PackedSweeper game) {
+        int tileCount = game.getField().getWidth() * game.getField().getHeight();
+        ByteBuffer mineBytes = ByteBuffer.wrap(Base64.getDecoder().decode(game.serialize().getAsJsonPrimitive(PackedSweeper.MINES_KEY).getAsString()));
+        boolean[] mines = new boolean[tileCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            mines[tile] = (mineBytes.getLong((tile >>> 6) * 8) & 1L << tile) != 0;
+        }
+        return mines;
+    }
+}
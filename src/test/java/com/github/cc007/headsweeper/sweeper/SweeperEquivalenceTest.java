@@ -0,0 +1,168 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sweeper;
+
+import com.github.cc007.mcsweeper.api.Field;
+import com.github.cc007.mcsweeper.api.Sweeper;
+import com.github.cc007.mcsweeper.implementation.MineSweeper;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Replays the same sweeps and flags on a {@link MineSweeper} and a
+ * {@link PackedSweeper} with the same mines, and checks that both games end
+ * up with the same fields.
+ * <p>
+ * MineSweeper doesn't expose its mines, so they are found by sweeping every
+ * tile on a copy of the game.
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class SweeperEquivalenceTest {
+
+    private static final int GAMES = 25;
+
+    @Test
+    public void beginnerGamesMatch() {
+        replayGames(9, 9, 10, 0.2);
+    }
+
+    @Test
+    public void expertGamesMatch() {
+        replayGames(30, 16, 99, 0.2);
+    }
+
+    @Test
+    public void flagHeavyGamesMatch() {
+        replayGames(8, 8, 10, 0.6);
+    }
+
+    @Test
+    public void denseGamesMatch() {
+        replayGames(8, 8, 40, 0.3);
+    }
+
+    private static void replayGames(int width, int height, int bombCount, double flagRatio) {
+        Random random = new Random(width * 31L + height * 17L + bombCount);
+        for (int gameNr = 0; gameNr < GAMES; gameNr++) {
+            int firstX = random.nextInt(width);
+            int firstY = random.nextInt(height);
+            MineSweeper reference = new MineSweeper(width, height, bombCount);
+            reference.resetField();
+            int[] initial = snapshot(reference);
+            reference.sweep(firstX, firstY);
+            if (reference.hasLost()) {
+                continue;
+            }
+            PackedSweeper packed = PackedSweeperTest.placed(width, height, findMines(reference));
+            assertChanges("sweep " + firstX + ", " + firstY, reference, packed, initial, packed.reveal(firstX, firstY));
+
+            while (!reference.hasWon() && !reference.hasLost()) {
+                int x = random.nextInt(width);
+                int y = random.nextInt(height);
+                int[] before = snapshot(reference);
+                String move;
+                if (random.nextDouble() < flagRatio) {
+                    // flags are only placed on tiles that haven't been revealed, like the click listener does
+                    if (before[y * width + x] >= Field.BOMB_STATE) {
+                        continue;
+                    }
+                    move = "flag " + x + ", " + y;
+                    reference.flag(x, y);
+                    packed.toggleFlag(x, y);
+                    assertFields(move, reference, packed);
+                } else {
+                    move = "sweep " + x + ", " + y;
+                    reference.sweep(x, y);
+                    assertChanges(move, reference, packed, before, packed.reveal(x, y));
+                }
+                assertEquals(move, reference.hasWon(), packed.hasWon());
+                assertEquals(move, reference.hasLost(), packed.hasLost());
+            }
+        }
+    }
+
+    /**
+     * Check that both games have the same field after a sweep, and that the
+     * packed game reported the tiles that changed in the reference game
+     */
+    private static void assertChanges(String move, MineSweeper reference, PackedSweeper packed, int[] before, int[] changed) {
+        assertFields(move, reference, packed);
+        if (reference.hasLost()) {
+            return;
+        }
+        int[] after = snapshot(reference);
+        int[] expected = new int[after.length];
+        int count = 0;
+        for (int tile = 0; tile < after.length; tile++) {
+            if (after[tile] != before[tile]) {
+                expected[count++] = tile;
+            }
+        }
+        Arrays.sort(changed);
+        assertArrayEquals(move, Arrays.copyOf(expected, count), changed);
+    }
+
+    private static void assertFields(String move, Sweeper reference, Sweeper packed) {
+        assertArrayEquals(move, snapshot(reference), snapshot(packed));
+    }
+
+    private static int[] snapshot(Sweeper game) {
+        Field field = game.getField();
+        int[] states = new int[field.getWidth() * field.getHeight()];
+        for (int y = 0; y < field.getHeight(); y++) {
+            for (int x = 0; x < field.getWidth(); x++) {
+                states[y * field.getWidth() + x] = field.getState(x, y);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Find the mines of a game that has been swept at least once, by sweeping
+     * every unknown tile on a copy of the game
+     */
+    private static boolean[] findMines(MineSweeper game) {
+        Field field = game.getField();
+        int width = field.getWidth();
+        boolean[] mines = new boolean[width * field.getHeight()];
+        for (int y = 0; y < field.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                if (field.getState(x, y) != Field.UNKNOWN_STATE) {
+                    continue;
+                }
+                Sweeper copy = SweeperEngine.MCSWEEPER.deserialize(game.serialize());
+                copy.sweep(x, y);
+                mines[y * width + x] = copy.hasLost();
+            }
+        }
+        return mines;
+    }
+}
@@ -0,0 +1,92 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.sync;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that every type of {@link BoardDelta} survives encoding
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class BoardDeltaTest {
+
+    private static final UUID PLAYER_ID = UUID.fromString("0b6f4a8e-2c1d-4e7f-9a3b-5d8c1e2f4a6b");
+
+    @Test
+    public void movesRoundTrip() throws IOException {
+        BoardDelta sweep = BoardDelta.decode(BoardDelta.sweep("lobby-1", 12, 40, PLAYER_ID, "CC007", 3, 7).encode());
+        assertEquals(BoardDelta.Type.SWEEP, sweep.getType());
+        assertEquals("lobby-1", sweep.getOrigin());
+        assertEquals(12, sweep.getBoard());
+        assertEquals(40, sweep.getVersion());
+        assertEquals(3, sweep.getX());
+        assertEquals(7, sweep.getY());
+        assertEquals(PLAYER_ID, sweep.getPlayerId());
+        assertEquals("CC007", sweep.getPlayerName());
+
+        BoardDelta flag = BoardDelta.decode(BoardDelta.flag("survival", 0, Long.MAX_VALUE, PLAYER_ID, "Spëler", 15, 0).encode());
+        assertEquals(BoardDelta.Type.FLAG, flag.getType());
+        assertEquals("survival", flag.getOrigin());
+        assertEquals(Long.MAX_VALUE, flag.getVersion());
+        assertEquals(15, flag.getX());
+        assertEquals(0, flag.getY());
+        assertEquals(PLAYER_ID, flag.getPlayerId());
+        assertEquals("Spëler", flag.getPlayerName());
+    }
+
+    @Test
+    public void statesRoundTrip() throws IOException {
+        byte[] gameState = {1, 2, 3, 4, 5, -1};
+        BoardDelta reset = BoardDelta.decode(BoardDelta.reset("a", 3, 8, gameState).encode());
+        assertEquals(BoardDelta.Type.RESET, reset.getType());
+        assertArrayEquals(gameState, reset.getGameState());
+        assertNull(reset.getPlayerId());
+
+        BoardDelta state = BoardDelta.decode(BoardDelta.state("b", 3, 9, gameState).encode());
+        assertEquals(BoardDelta.Type.STATE, state.getType());
+        assertEquals(9, state.getVersion());
+        assertArrayEquals(gameState, state.getGameState());
+
+        BoardDelta request = BoardDelta.decode(BoardDelta.stateRequest("c", 3, 2).encode());
+        assertEquals(BoardDelta.Type.STATE_REQUEST, request.getType());
+        assertEquals("c", request.getOrigin());
+        assertEquals(2, request.getVersion());
+        assertNull(request.getGameState());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedDelta() throws IOException {
+        byte[] encoded = BoardDelta.state("b", 3, 9, new byte[64]).encode();
+        BoardDelta.decode(Arrays.copyOf(encoded, encoded.length - 1));
+    }
+}
@@ -0,0 +1,98 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Rik Schaaf aka CC007 <http://coolcat007.nl/>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.cc007.headsweeper.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link LongObjectHashMap} against a {@link HashMap}
+ *
+ * @author Rik Schaaf aka CC007 (http://coolcat007.nl/)
+ */
+public class LongObjectHashMapTest {
+
+    @Test
+    public void putGetAndRemove() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(3, "three"));
+        assertNull(map.put(-3, "minus three"));
+        assertEquals("three", map.put(3, "drie"));
+        assertEquals(2, map.size());
+        assertEquals("drie", map.get(3));
+        assertEquals("minus three", map.get(-3));
+        assertNull(map.get(4));
+        assertTrue(map.containsKey(-3));
+        assertEquals("drie", map.remove(3));
+        assertNull(map.remove(3));
+        assertFalse(map.containsKey(3));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-3));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullValuesAreRejected() {
+        new LongObjectHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        // chunk keys of a small area give many collisions and removals in the middle of probe chains
+        Random random = new Random(42);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = (long) (random.nextInt(48) - 24) << 32 | (random.nextInt(48) - 24) & 0xFFFFFFFFL;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, key), map.put(key, key));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+                    break;
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}